@@ -0,0 +1,50 @@
+// ActivityEvent.java
+package com.socio.event;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Something a user did that another user should hear about.
+ *
+ * Published through Spring's ApplicationEventPublisher by the services that
+ * perform the action; listeners see it after the action's transaction commits.
+ * Every event is also appended to the mutation log.
+ */
+@Value
+public class ActivityEvent {
+
+    public enum Type {
+        LIKE(true),
+        COMMENT(true),
+        FOLLOW(true),
+        SHARE(true),
+        POST_CREATED(false),
+        REPORT(false),
+        POST_DELETED(false);
+
+        // Whether the recipient gets a notification
+        private final boolean notifies;
+
+        Type(boolean notifies) {
+            this.notifies = notifies;
+        }
+
+        public boolean notifies() {
+            return notifies;
+        }
+    }
+
+    Type type;
+    Long actorId;
+    // Null for POST_CREATED and REPORT; the post's author for POST_DELETED
+    Long recipientId;
+    // Null for FOLLOW
+    Long postId;
+    LocalDateTime timestamp;
+
+    public static ActivityEvent of(Type type, Long actorId, Long recipientId, Long postId) {
+        return new ActivityEvent(type, actorId, recipientId, postId, LocalDateTime.now());
+    }
+}
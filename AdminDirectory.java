@@ -0,0 +1,41 @@
+// AdminDirectory.java
+package com.socio.cache;
+
+import com.socio.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Cached set of admin user ids, loaded from the indexed is_admin column.
+ *
+ * Refreshed after createAdmin and every few minutes, so admin checks and
+ * admin fan-outs never have to touch the users table.
+ */
+@Component
+@RequiredArgsConstructor
+public class AdminDirectory {
+
+    private final UserRepository userRepository;
+
+    private volatile Set<Long> adminIds = Collections.emptySet();
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${socio.admins.refresh-interval-ms:300000}")
+    public void refresh() {
+        adminIds = Collections.unmodifiableSet(new HashSet<>(userRepository.findAdminIds()));
+    }
+
+    public boolean isAdmin(Long userId) {
+        return userId != null && adminIds.contains(userId);
+    }
+
+    public Set<Long> getAdminIds() {
+        return adminIds;
+    }
+}
@@ -6,8 +6,8 @@ import com.example.auth.dto.RegisterRequest;
 import com.example.auth.entity.User;
 import com.example.auth.repository.UserRepository;
 import com.example.auth.config.JwtUtil;
+import com.socio.security.PasswordHashingService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -17,7 +17,7 @@ import java.util.Optional;
 public class AuthService {
     
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtUtil jwtUtil;
 
     public AuthResponse register(RegisterRequest request) {
@@ -27,7 +27,7 @@ public class AuthService {
 
         User user = User.builder()
                 .email(request.getEmail())
-                .password(passwordEncoder.encode(request.getPassword()))
+                .password(passwordHashingService.encode(request.getPassword()))
                 .name(request.getName())
                 .dateOfBirth(LocalDateTime.parse(request.getDateOfBirth()))
                 .isAdmin(false)
@@ -45,10 +45,20 @@ public class AuthService {
     public AuthResponse login(AuthRequest request) {
         Optional<User> user = userRepository.findByEmail(request.getEmail());
         
-        if (user.isEmpty() || !passwordEncoder.matches(request.getPassword(), user.get().getPassword())) {
+        if (user.isEmpty() || !passwordHashingService.matches(request.getPassword(), user.get().getPassword())) {
             throw new RuntimeException("Invalid credentials!");
         }
 
+        // Bring old hashes up to the current work factor while we have the plain password
+        if (passwordHashingService.needsRehash(user.get().getPassword())) {
+            String rehashed = passwordHashingService.tryEncode(request.getPassword());
+            if (rehashed != null) {
+                user.get().setPassword(rehashed);
+                user.get().setUpdatedAt(LocalDateTime.now());
+                userRepository.save(user.get());
+            }
+        }
+
         String token = jwtUtil.generateToken(user.get().getEmail());
         return new AuthResponse(token);
     }
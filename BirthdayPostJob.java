@@ -0,0 +1,237 @@
+// BirthdayPostLedger.java
+package com.socio.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * One greeted user per year. The primary key is what stops two runs, or two nodes,
+ * from greeting the same user twice. With sharding the rows live on the user's shard,
+ * next to the birthday posts they guard.
+ */
+@Entity
+@Table(name = "birthday_post_ledger")
+@IdClass(BirthdayPostLedger.Key.class)
+@Data
+@NoArgsConstructor
+public class BirthdayPostLedger {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "birthday_year")
+    private Integer birthdayYear;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private Integer birthdayYear;
+    }
+}
+
+// BirthdayPostJob.java
+package com.socio.service;
+
+import com.socio.entity.Post;
+import com.socio.event.ActivityEvent;
+import com.socio.exception.SearchIndexException;
+import com.socio.repository.BirthdayUser;
+import com.socio.repository.UserRepository;
+import com.socio.search.PostSearchIndex;
+import com.socio.sharding.ShardIdGenerator;
+import com.socio.sharding.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.MonthDay;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Daily job that creates birthday posts for everyone whose birthday is today.
+ *
+ * Matching users are split into chunks and processed on a small worker pool.
+ * Each chunk claims its users in birthday_post_ledger with INSERT ... ON CONFLICT DO
+ * NOTHING and writes posts only for the rows it actually inserted, in the same
+ * transaction. A restarted run, or the same job firing on another node, therefore
+ * skips users that were already greeted this year.
+ *
+ * With sharding, a chunk is split by the users' shards and each part is claimed and
+ * posted on that shard in one transaction, so the ledger row and the post always
+ * commit together. Post ids come from ShardIdGenerator, as for posts saved through JPA.
+ * Every post publishes POST_CREATED, which listeners see once its transaction commits,
+ * and is added to the search index after that commit, as posts created through the API are.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BirthdayPostJob {
+
+    private static final String INSERT_POST =
+            "INSERT INTO posts (id, content, user_id, created_at, is_shared) VALUES (?, ?, ?, ?, false)";
+    // Returns only the users this transaction claimed; a concurrent claim blocks until it commits.
+    // :rows expands to (user_id, year) tuples, since the users table is not on every shard.
+    private static final String CLAIM_LEDGER =
+            "INSERT INTO birthday_post_ledger (user_id, birthday_year) VALUES :rows " +
+            "ON CONFLICT (user_id, birthday_year) DO NOTHING RETURNING user_id";
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PostSearchIndex postSearchIndex;
+
+    @Value("${socio.birthday.workers:4}")
+    private int workers;
+
+    @Value("${socio.birthday.chunk-size:500}")
+    private int chunkSize;
+
+    @Scheduled(cron = "${socio.birthday.cron:0 5 0 * * *}")
+    public void createTodaysBirthdayPosts() {
+        int created = run(LocalDate.now());
+        log.info("Created {} birthday posts", created);
+    }
+
+    /**
+     * Create birthday posts for one day
+     *
+     * @param today the date to greet users for
+     * @return number of posts created
+     */
+    public int run(LocalDate today) {
+        List<BirthdayUser> users = new ArrayList<>(
+                userRepository.findByBirthMonthAndDay(today.getMonthValue(), today.getDayOfMonth()));
+
+        // Users born on Feb 29 are greeted on Feb 28 in non-leap years
+        if (!today.isLeapYear() && MonthDay.from(today).equals(MonthDay.of(2, 28))) {
+            users.addAll(userRepository.findByBirthMonthAndDay(2, 29));
+        }
+        if (users.isEmpty()) {
+            return 0;
+        }
+
+        int year = today.getYear();
+        AtomicInteger created = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < users.size(); from += chunkSize) {
+                List<BirthdayUser> chunk = users.subList(from, Math.min(from + chunkSize, users.size()));
+                futures.add(executor.submit(() -> created.addAndGet(processChunk(chunk, year))));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    // A failed chunk rolls back on its own and is retried by the next run
+                    log.error("Birthday post chunk failed", e);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return created.get();
+    }
+
+    private int processChunk(List<BirthdayUser> chunk, int year) {
+        Map<Long, BirthdayUser> usersById = chunk.stream()
+                .collect(Collectors.toMap(BirthdayUser::getId, Function.identity(), (a, b) -> a));
+        // Each shard's part runs in that shard's transaction, or in one of its own without sharding
+        Map<Integer, Integer> inserted = shardRouter.scatter(shardRouter.partitionByUser(usersById.keySet()),
+                (shard, userIds) -> transactionTemplate.execute(status -> claimAndPost(shard,
+                        userIds.stream().map(usersById::get).collect(Collectors.toList()), year)));
+        return inserted.values().stream().mapToInt(count -> count != null ? count : 0).sum();
+    }
+
+    private int claimAndPost(int shard, List<BirthdayUser> users, int year) {
+        List<Object[]> rows = users.stream()
+                .map(user -> new Object[]{user.getId(), year})
+                .collect(Collectors.toList());
+        Set<Long> claimed = new HashSet<>(namedParameterJdbcTemplate.queryForList(CLAIM_LEDGER,
+                new MapSqlParameterSource("rows", rows), Long.class));
+
+        List<BirthdayUser> pending = users.stream()
+                .filter(user -> claimed.contains(user.getId()))
+                .collect(Collectors.toList());
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(pending.size());
+        List<Post> posts = new ArrayList<>(pending.size());
+        Map<Long, Boolean> authorPrivate = new HashMap<>();
+        List<ActivityEvent> events = new ArrayList<>(pending.size());
+        for (BirthdayUser user : pending) {
+            Post post = new Post();
+            post.setId(ShardIdGenerator.get().next(shard));
+            post.setContent("Happy Birthday, " + user.getName() + "! 🎂 From SOCIO");
+            post.setUserId(user.getId());
+            post.setCreatedAt(now);
+            post.setIsShared(false);
+            posts.add(post);
+            authorPrivate.put(user.getId(), Boolean.TRUE.equals(user.getPrivate()));
+            rows.add(new Object[]{post.getId(), post.getContent(), post.getUserId(), Timestamp.valueOf(now)});
+            events.add(ActivityEvent.of(ActivityEvent.Type.POST_CREATED, user.getId(), null, post.getId()));
+        }
+        jdbcTemplate.batchUpdate(INSERT_POST, rows);
+        // Transactional listeners run once this shard's transaction commits
+        events.forEach(eventPublisher::publishEvent);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                index(posts, authorPrivate);
+            }
+        });
+        return pending.size();
+    }
+
+    private void index(List<Post> posts, Map<Long, Boolean> authorPrivate) {
+        for (Post post : posts) {
+            try {
+                postSearchIndex.index(post, authorPrivate.get(post.getUserId()));
+            } catch (SearchIndexException e) {
+                // Committed either way; like a failed index write through the API, it stays out of search until a rebuild
+                log.warn("Could not index birthday post {}: {}", post.getId(), e.getMessage());
+            }
+        }
+    }
+}
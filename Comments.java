@@ -5,30 +5,51 @@ public class CommentService {
     private final CommentRepository commentRepository;
     private final PostRepository postRepository;
     private final UserRepository userRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardRouter shardRouter;
+    private final VersionStamps versionStamps;
 
     public Comment addComment(Long postId, String content, String email) {
-        User user = userRepository.findByEmail(email)
+        User user = userSummaryCache.getByEmail(email)
+                .map(summary -> userRepository.getReferenceById(summary.getId()))
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
-        Post post = postRepository.findById(postId)
-                .orElseThrow(() -> new EntityNotFoundException("Post not found"));
 
-        Comment comment = new Comment(user, post, content);
-        post.incrementCommentCount();
-        return commentRepository.save(comment);
+        // The comment is stored with its post
+        return shardRouter.onPostShard(postId, () -> {
+            Post post = postRepository.findById(postId)
+                    .orElseThrow(() -> new EntityNotFoundException("Post not found"));
+
+            Comment comment = new Comment(user, post, content);
+            post.incrementCommentCount();
+            Comment saved = commentRepository.save(comment);
+            eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.COMMENT, user.getId(), post.getUserId(), postId));
+            return saved;
+        });
     }
 
     public void deleteComment(Long commentId, String email) {
-        Comment comment = commentRepository.findById(commentId)
-                .orElseThrow(() -> new EntityNotFoundException("Comment not found"));
-        if (!comment.getUser().getEmail().equals(email)) {
-            throw new AccessDeniedException("Not authorized to delete this comment");
-        }
-        commentRepository.delete(comment);
-        comment.getPost().decrementCommentCount();
+        Long userId = userSummaryCache.getByEmail(email)
+                .map(UserSummary::getId)
+                .orElseThrow(() -> new EntityNotFoundException("User not found"));
+
+        // Comment ids carry the shard of the post they were written on
+        shardRouter.onPostShard(commentId, () -> {
+            Comment comment = commentRepository.findById(commentId)
+                    .orElseThrow(() -> new EntityNotFoundException("Comment not found"));
+            // Compare ids: the commenter's row is on the home shard, not necessarily this one
+            if (!comment.getUser().getId().equals(userId)) {
+                throw new AccessDeniedException("Not authorized to delete this comment");
+            }
+            commentRepository.delete(comment);
+            comment.getPost().decrementCommentCount();
+            versionStamps.postChanged(comment.getPost().getId());
+            return null;
+        });
     }
 
     public List<Comment> getCommentsByPost(Long postId) {
-        return commentRepository.findByPostId(postId);
+        return shardRouter.onPostShard(postId, () -> commentRepository.findByPostId(postId));
     }
 }
 
@@ -0,0 +1,67 @@
+// FileTypes.java
+package com.socio.util;
+
+/**
+ * Maps upload content types to the coarse file types stored on posts
+ */
+public final class FileTypes {
+
+    private FileTypes() {
+    }
+
+    /**
+     * @return IMAGE, VIDEO, PDF, AUDIO or DOCUMENT, or null if the content type is unknown
+     */
+    public static String fromContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        
+        if (contentType.startsWith("image/")) {
+            return "IMAGE";
+        } else if (contentType.startsWith("video/")) {
+            return "VIDEO";
+        } else if (contentType.equals("application/pdf")) {
+            return "PDF";
+        } else if (contentType.startsWith("audio/")) {
+            return "AUDIO";
+        } else {
+            return "DOCUMENT";
+        }
+    }
+}
+
+// UserCsvParser.java
+package com.socio.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the bulk user import format: a header line, then email,password,name[,...] per line
+ */
+public final class UserCsvParser {
+
+    private UserCsvParser() {
+    }
+
+    /**
+     * @return the rows with at least email, password and name; shorter rows are skipped
+     */
+    public static List<String[]> parse(BufferedReader reader) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        // Skip header
+        reader.readLine();
+        
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] data = line.split(",");
+            if (data.length >= 3) { // Minimum: email, password, name
+                rows.add(data);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,370 @@
+// FeedAssemblyEvent.java
+package com.socio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One feed page built from the database. Pages served from the userFeed cache
+ * never reach PostServiceImpl and emit no event.
+ */
+@Name("com.socio.FeedAssembly")
+@Label("Feed Assembly")
+@Category({"Socio", "Posts"})
+@Description("Feed page query and hydration on a userFeed cache miss")
+@StackTrace(false)
+public class FeedAssemblyEvent extends jdk.jfr.Event {
+
+    @Label("User Id")
+    public long userId;
+
+    @Label("Page")
+    public int page;
+
+    @Label("Page Size")
+    public int pageSize;
+
+    @Label("Post Count")
+    public int postCount;
+
+    @Label("Total Posts")
+    public long totalPosts;
+}
+
+// PostHydrationEvent.java
+package com.socio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.socio.PostHydration")
+@Label("Post Hydration")
+@Category({"Socio", "Posts"})
+@Description("Conversion of posts to DTOs: authors, like and comment counts, current user's likes")
+@StackTrace(false)
+public class PostHydrationEvent extends jdk.jfr.Event {
+
+    @Label("Post Count")
+    public int postCount;
+
+    @Label("Author Count")
+    public int authorCount;
+
+    @Label("Author Cache Hits")
+    @Description("Authors already in the UserSummaryCache; the rest were loaded with one query")
+    public int authorCacheHits;
+}
+
+// VisibilityCheckEvent.java
+package com.socio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.socio.VisibilityCheck")
+@Label("Visibility Check")
+@Category({"Socio", "Privacy"})
+@Description("Whether a user may see a post, a user's posts or a group's posts")
+@StackTrace(false)
+public class VisibilityCheckEvent extends jdk.jfr.Event {
+
+    @Label("Target Type")
+    @Description("POST, USER or GROUP")
+    public String targetType;
+
+    @Label("Target Id")
+    public long targetId;
+
+    @Label("Viewer Id")
+    public long viewerId;
+
+    @Label("Private Target")
+    public boolean privateTarget;
+
+    @Label("Relationship Lookup")
+    @Description("A follow or membership query was needed")
+    public boolean relationshipLookup;
+
+    @Label("Allowed")
+    public boolean allowed;
+}
+
+// JwtAuthenticationEvent.java
+package com.socio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.socio.JwtAuthentication")
+@Label("JWT Authentication")
+@Category({"Socio", "Security"})
+@Description("Bearer token validation and user lookup for one request")
+@StackTrace(false)
+public class JwtAuthenticationEvent extends jdk.jfr.Event {
+
+    @Label("Token Present")
+    public boolean tokenPresent;
+
+    @Label("Token Valid")
+    public boolean tokenValid;
+
+    @Label("User Loaded")
+    public boolean userLoaded;
+}
+
+// MediaStoreEvent.java
+package com.socio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.socio.MediaStore")
+@Label("Media Store")
+@Category({"Socio", "Media"})
+@Description("Storing, reclaiming or serving a media blob")
+@StackTrace(false)
+public class MediaStoreEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    @Description("STORE, RECLAIM, ROLLBACK (files of an upload that rolled back) or SERVE")
+    public String operation;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Duplicate")
+    @Description("STORE: the content was already stored")
+    public boolean duplicate;
+
+    @Label("Hot Cache")
+    @Description("SERVE: written from the memory-mapped hot blob cache")
+    public boolean hotCache;
+
+    @Label("Sendfile")
+    @Description("SERVE: handed to Tomcat's sendfile")
+    public boolean sendfile;
+}
+
+// FlightRecordingService.java
+package com.socio.jfr;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * One on-demand JFR recording at a time.
+ *
+ * The socio events are cheap to leave in the code: with no recording running,
+ * Event.commit() is a no-op the JIT removes. A recording is bounded by age, size
+ * and duration so one that is never stopped cannot fill the disk.
+ */
+@Slf4j
+@Service
+public class FlightRecordingService {
+
+    private static final String[] SOCIO_EVENTS = {
+            "com.socio.FeedAssembly",
+            "com.socio.PostHydration",
+            "com.socio.VisibilityCheck",
+            "com.socio.JwtAuthentication",
+            "com.socio.MediaStore"
+    };
+
+    @Value("${socio.jfr.max-age-minutes:10}")
+    private long maxAgeMinutes;
+
+    @Value("${socio.jfr.max-size-mb:100}")
+    private long maxSizeMb;
+
+    @Value("${socio.jfr.max-duration-minutes:30}")
+    private long maxDurationMinutes;
+
+    private Recording recording;
+
+    /**
+     * Start a recording, or leave the running one alone
+     *
+     * @param settings "default" (about 1% overhead) or "profile" (more detail, about 2%)
+     * @param durationMinutes stop on its own after this long, capped by socio.jfr.max-duration-minutes
+     */
+    public synchronized Map<String, Object> start(String settings, long durationMinutes) throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return status();
+        }
+        closeRecording();
+
+        Recording started = new Recording(Configuration.getConfiguration(settings));
+        started.setName("socio-on-demand");
+        started.setToDisk(true);
+        started.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+        started.setMaxSize(maxSizeMb * 1024 * 1024);
+        started.setDuration(Duration.ofMinutes(Math.min(Math.max(durationMinutes, 1), maxDurationMinutes)));
+        for (String event : SOCIO_EVENTS) {
+            started.enable(event).withoutStackTrace().withThreshold(Duration.ZERO);
+        }
+        started.start();
+        recording = started;
+        log.info("Started JFR recording with {} settings", settings);
+        return status();
+    }
+
+    public synchronized Map<String, Object> stop() {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+            log.info("Stopped JFR recording");
+        }
+        return status();
+    }
+
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", recording != null ? recording.getState().name() : "NONE");
+        if (recording != null) {
+            status.put("startTime", recording.getStartTime());
+            status.put("stopTime", recording.getStopTime());
+            status.put("bytes", recording.getSize());
+        }
+        return status;
+    }
+
+    /**
+     * Write what has been recorded so far to a temporary file. The recording keeps running.
+     *
+     * @return the file, which the caller deletes, or null if there is no recording
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null || recording.getState() == RecordingState.NEW
+                || recording.getState() == RecordingState.CLOSED) {
+            return null;
+        }
+        Path file = Files.createTempFile("socio-", ".jfr");
+        recording.dump(file);
+        return file;
+    }
+
+    @PreDestroy
+    public synchronized void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
+
+// FlightRecordingController.java
+package com.socio.controller;
+
+import com.socio.jfr.FlightRecordingService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Map;
+
+/**
+ * REST controller for on-demand Flight Recorder recordings (admin only)
+ */
+@RestController
+@RequestMapping("/api/admin/jfr")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+@Api(tags = "Flight Recorder")
+public class FlightRecordingController {
+
+    private final FlightRecordingService flightRecordingService;
+
+    /**
+     * Start a bounded recording
+     */
+    @PostMapping("/start")
+    @ApiOperation("Start a JFR recording")
+    public ResponseEntity<Map<String, Object>> start(
+            @RequestParam(defaultValue = "profile") String settings,
+            @RequestParam(defaultValue = "10") long durationMinutes) throws IOException, ParseException {
+        
+        return ResponseEntity.ok(flightRecordingService.start(settings, durationMinutes));
+    }
+
+    /**
+     * Stop the recording; it can still be downloaded until the next start
+     */
+    @PostMapping("/stop")
+    @ApiOperation("Stop the JFR recording")
+    public ResponseEntity<Map<String, Object>> stop() {
+        return ResponseEntity.ok(flightRecordingService.stop());
+    }
+
+    @GetMapping("/status")
+    @ApiOperation("Get JFR recording status")
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(flightRecordingService.status());
+    }
+
+    /**
+     * Download the recording as a .jfr file, for JDK Mission Control or `jfr print`
+     */
+    @GetMapping("/download")
+    @ApiOperation("Download the JFR recording")
+    public ResponseEntity<StreamingResponseBody> download() throws IOException {
+        Path file = flightRecordingService.dump();
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> {
+            try {
+                Files.copy(file, out);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(Files.size(file))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"socio.jfr\"")
+                .body(body);
+    }
+}
@@ -4,11 +4,17 @@
 public class FollowService {
     private final FollowRepository followRepository;
     private final UserRepository userRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final VersionStamps versionStamps;
+    private final UserTypeaheadIndex userTypeaheadIndex;
 
     public void followUser(Long followingId, String email) {
-        User follower = userRepository.findByEmail(email)
+        User follower = userSummaryCache.getByEmail(email)
+                .map(summary -> userRepository.getReferenceById(summary.getId()))
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
-        User following = userRepository.findById(followingId)
+        User following = userSummaryCache.get(followingId)
+                .map(summary -> userRepository.getReferenceById(summary.getId()))
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
 
         if (followRepository.existsByFollowerAndFollowing(follower, following)) {
@@ -16,18 +22,24 @@ public class FollowService {
         }
 
         followRepository.save(new Follow(follower, following));
+        userTypeaheadIndex.adjustFollowerCount(String.valueOf(followingId), 1);
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.FOLLOW, follower.getId(), followingId, null));
     }
 
     public void unfollowUser(Long followingId, String email) {
-        User follower = userRepository.findByEmail(email)
+        User follower = userSummaryCache.getByEmail(email)
+                .map(summary -> userRepository.getReferenceById(summary.getId()))
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
-        User following = userRepository.findById(followingId)
+        User following = userSummaryCache.get(followingId)
+                .map(summary -> userRepository.getReferenceById(summary.getId()))
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
 
         Follow follow = followRepository.findByFollowerAndFollowing(follower, following)
                 .orElseThrow(() -> new EntityNotFoundException("Follow relation not found"));
 
         followRepository.delete(follow);
+        userTypeaheadIndex.adjustFollowerCount(String.valueOf(followingId), -1);
+        versionStamps.followChanged(follower.getId(), followingId);
     }
 }
 
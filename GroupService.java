@@ -3,6 +3,8 @@ package com.socio.service;
 import com.socio.entity.Group;
 import com.socio.entity.GroupMember;
 import com.socio.entity.User;
+import com.socio.metrics.MeteredService;
+import com.socio.metrics.SqlBudget;
 import com.socio.repository.GroupMemberRepository;
 import com.socio.repository.GroupRepository;
 import com.socio.repository.UserRepository;
@@ -14,6 +16,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Service
+@MeteredService
 public class GroupService {
 
     @Autowired
@@ -85,10 +88,14 @@ public class GroupService {
         groupMemberRepository.deleteByGroupGroupIdAndUserUserId(groupId, userId);
     }
 
+    @Transactional(readOnly = true)
+    @SqlBudget(2)
     public List<Group> getUserGroups(Long userId) {
         return groupRepository.findByMembersUserUserId(userId);
     }
 
+    @Transactional(readOnly = true)
+    @SqlBudget(1)
     public Optional<Group> getGroupDetails(Long groupId) {
         return groupRepository.findById(groupId);
     }
@@ -0,0 +1,421 @@
+// BenchmarkStubs.java
+package com.socio.bench;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-memory stand-ins for Spring Data repositories, so service code can be
+ * benchmarked without a database. Only the methods named in the answers map
+ * are implemented; anything else fails loudly so a benchmark never silently
+ * measures a code path it did not set up.
+ */
+final class BenchmarkStubs {
+
+    private BenchmarkStubs() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    Function<Object[], Object> answer = answers.get(method.getName());
+                    if (answer == null) {
+                        throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+                    }
+                    return answer.apply(args);
+            }
+        });
+    }
+}
+
+// PostConversionBenchmark.java
+package com.socio.bench;
+
+import com.socio.cache.AdminDirectory;
+import com.socio.cache.UserSummaryCache;
+import com.socio.dto.PostDto;
+import com.socio.entity.Post;
+import com.socio.entity.User;
+import com.socio.repository.CommentRepository;
+import com.socio.repository.LikeRepository;
+import com.socio.repository.PostCount;
+import com.socio.repository.PostRepository;
+import com.socio.repository.UserRepository;
+import com.socio.service.impl.PostServiceImpl;
+import com.socio.sharding.ShardRouter;
+import com.socio.sharding.ShardingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Post to PostDto conversion through the public service methods, with every
+ * repository answered from memory. Measures our own hydration overhead: the
+ * summary-cache lookups, grouping of counts and DTO assembly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostConversionBenchmark {
+
+    private static final long VIEWER_ID = 1L;
+
+    @Param({"20", "200"})
+    private int pageSize;
+
+    private PostServiceImpl postService;
+    private Pageable page;
+
+    @Setup
+    public void setUp() {
+        List<User> users = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setName("User " + id);
+            user.setEmail("user" + id + "@example.com");
+            users.add(user);
+        }
+        Map<Long, User> usersById = users.stream().collect(Collectors.toMap(User::getId, u -> u));
+
+        List<Post> posts = new ArrayList<>();
+        for (long id = 1; id <= pageSize; id++) {
+            Post post = new Post();
+            post.setId(id);
+            post.setUserId(1 + id % users.size());
+            post.setContent("Post number " + id);
+            post.setCreatedAt(LocalDateTime.now().minusMinutes(id));
+            posts.add(post);
+        }
+        Map<Long, Post> postsById = posts.stream().collect(Collectors.toMap(Post::getId, p -> p));
+
+        UserRepository userRepository = BenchmarkStubs.repository(UserRepository.class, Map.of(
+                "findById", args -> Optional.ofNullable(usersById.get((Long) args[0])),
+                "findAllById", args -> idsOf(args[0]).stream()
+                        .map(usersById::get).filter(u -> u != null).collect(Collectors.toList()),
+                "findAdminIds", args -> Collections.emptyList()));
+        PostRepository postRepository = BenchmarkStubs.repository(PostRepository.class, Map.of(
+                "findById", args -> Optional.ofNullable(postsById.get((Long) args[0])),
+                "findFeedForUser", args -> (Page<Post>) new PageImpl<>(posts, (Pageable) args[1], posts.size())));
+        LikeRepository likeRepository = BenchmarkStubs.repository(LikeRepository.class, Map.of(
+                "countByPostIds", args -> counts(idsOf(args[0]), 7),
+                "findPostIdsLikedByUser", args -> idsOf(args[1]).stream()
+                        .filter(id -> id % 3 == 0).collect(Collectors.toList())));
+        CommentRepository commentRepository = BenchmarkStubs.repository(CommentRepository.class, Map.of(
+                "countByPostIds", args -> counts(idsOf(args[0]), 3)));
+
+        UserSummaryCache userSummaryCache = new UserSummaryCache(userRepository);
+        ReflectionTestUtils.setField(userSummaryCache, "maxEntries", 200000);
+        AdminDirectory adminDirectory = new AdminDirectory(userRepository);
+        adminDirectory.refresh();
+
+        // Media, search and group collaborators are not on the read paths measured here
+        // Unsharded: the router runs everything directly and never touches the transaction manager
+        ShardRouter shardRouter = new ShardRouter(null,
+                new StaticListableBeanFactory().getBeanProvider(ShardingProperties.class));
+        postService = new PostServiceImpl(postRepository, userSummaryCache, adminDirectory, likeRepository,
+                commentRepository, null, null, null, null, null, null, null, shardRouter, null);
+        page = PageRequest.of(0, pageSize);
+    }
+
+    @Benchmark
+    public Page<PostDto> feedPage() {
+        return postService.getFeedForUser(VIEWER_ID, page);
+    }
+
+    @Benchmark
+    public PostDto singlePost() {
+        return postService.getPostById(1L, VIEWER_ID);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Long> idsOf(Object arg) {
+        return (Collection<Long>) arg;
+    }
+
+    private static List<PostCount> counts(Collection<Long> postIds, long count) {
+        List<PostCount> counts = new ArrayList<>(postIds.size());
+        for (Long postId : postIds) {
+            counts.add(new PostCount() {
+                @Override
+                public Long getPostId() {
+                    return postId;
+                }
+
+                @Override
+                public long getCount() {
+                    return count;
+                }
+            });
+        }
+        return counts;
+    }
+}
+
+// JwtBenchmark.java
+package com.socio.bench;
+
+import com.example.auth.config.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        token = jwtUtil.generateToken("user1@example.com");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken("user1@example.com");
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtUtil.validateToken(token);
+    }
+
+    @Benchmark
+    public String extractEmail() {
+        return jwtUtil.extractEmail(token);
+    }
+}
+
+// JwtFilterBenchmark.java
+package com.socio.bench;
+
+import com.example.auth.config.JwtUtil;
+import com.socio.security.JwtAuthenticationFilter;
+import com.socio.service.CustomUserDetailsService;
+import com.socio.service.JwtService;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One authenticated request through JwtAuthenticationFilter. Token checks run
+ * the real JwtUtil signature verification; the user lookup is answered from memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private JwtAuthenticationFilter filter;
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = new JwtUtil();
+        authorization = "Bearer " + jwtUtil.generateToken("user1@example.com");
+
+        JwtService jwtService = Mockito.mock(JwtService.class);
+        Mockito.when(jwtService.validateToken(Mockito.anyString()))
+                .thenAnswer(invocation -> jwtUtil.validateToken(invocation.getArgument(0)));
+        Mockito.when(jwtService.extractUsername(Mockito.anyString()))
+                .thenAnswer(invocation -> jwtUtil.extractEmail(invocation.getArgument(0)));
+
+        UserDetails user = new User("user1@example.com", "ignored",
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+        CustomUserDetailsService userDetailsService = new CustomUserDetailsService() {
+            @Override
+            public UserDetails loadUserByUsername(String username) {
+                return user;
+            }
+        };
+
+        filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtService", jwtService);
+        ReflectionTestUtils.setField(filter, "customUserDetailsService", userDetailsService);
+    }
+
+    @Benchmark
+    public Object authenticatedRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/posts/feed");
+        request.addHeader("Authorization", authorization);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
+
+// ImportParsingBenchmark.java
+package com.socio.bench;
+
+import com.socio.util.FileTypes;
+import com.socio.util.UserCsvParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU-only parts of uploads and imports: CSV row parsing and content-type mapping
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportParsingBenchmark {
+
+    private static final String[] CONTENT_TYPES = {
+            "image/jpeg", "video/mp4", "application/pdf", "audio/mpeg", "text/plain", null
+    };
+
+    @Param({"1000", "10000"})
+    private int rows;
+
+    private String csv;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("email,password,name,dateOfBirth\n");
+        for (int i = 0; i < rows; i++) {
+            builder.append("user").append(i).append("@example.com,")
+                    .append("secret").append(i).append(',')
+                    .append("User ").append(i).append(",1990-01-01\n");
+        }
+        csv = builder.toString();
+    }
+
+    @Benchmark
+    public List<String[]> parseUserCsv() throws IOException {
+        return UserCsvParser.parse(new BufferedReader(new StringReader(csv)));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void fileTypeFromContentType(Blackhole blackhole) {
+        for (String contentType : CONTENT_TYPES) {
+            blackhole.consume(FileTypes.fromContentType(contentType));
+        }
+    }
+}
+
+// BenchmarkRunner.java
+package com.socio.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks and writes the results as JSON, one file per run,
+ * so results from two versions can be diffed or fed to a regression check.
+ *
+ * Usage: BenchmarkRunner [resultFile] [includeRegex]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String resultFile = args.length > 0 ? args[0] : "jmh-result.json";
+        String include = args.length > 1 ? args[1] : "com\\.socio\\.bench\\..*";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
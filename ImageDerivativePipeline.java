@@ -0,0 +1,269 @@
+// ImageVariant.java
+package com.socio.media;
+
+/**
+ * Renditions generated for IMAGE posts. Thumbnails are square crops,
+ * the other variants keep the aspect ratio and fit inside the bounding box.
+ */
+public enum ImageVariant {
+    THUMB("thumb", 160, true),
+    SMALL("small", 480, false),
+    MEDIUM("medium", 1080, false);
+
+    private final String key;
+    private final int size;
+    private final boolean crop;
+
+    ImageVariant(String key, int size, boolean crop) {
+        this.key = key;
+        this.size = size;
+        this.crop = crop;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isCrop() {
+        return crop;
+    }
+
+    public static ImageVariant fromKey(String key) {
+        for (ImageVariant variant : values()) {
+            if (variant.key.equals(key)) {
+                return variant;
+            }
+        }
+        return null;
+    }
+}
+
+// ImageDerivativePipeline.java
+package com.socio.media;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded background pipeline that renders thumbnails and resized variants of image blobs.
+ *
+ * When the queue is full the task is dropped and logged rather than holding up the
+ * submitting request; clients keep getting the original until the variant exists.
+ *
+ * Dimensions are read from the header before anything is decoded, and sources over
+ * maxSourcePixels are skipped, so a small file that claims a huge canvas cannot exhaust
+ * the heap. Large sources are decoded subsampled, at no less than the largest variant.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ImageDerivativePipeline {
+
+    private final MediaStore mediaStore;
+
+    @Value("${socio.media.derivatives.workers:2}")
+    private int workers;
+
+    @Value("${socio.media.derivatives.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${socio.media.derivatives.max-source-pixels:50000000}")
+    private long maxSourcePixels;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-derivatives-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                dropWhenFull());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue derivative generation for an image blob
+     */
+    public void submit(String hash) {
+        if (allVariantsExist(hash)) {
+            return;
+        }
+        executor.execute(() -> render(hash));
+    }
+
+    /**
+     * URLs of every variant of an image blob, keyed by variant name.
+     * The media endpoint serves the original until a variant has been rendered.
+     */
+    public Map<String, String> urlsFor(String hash) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        for (ImageVariant variant : ImageVariant.values()) {
+            urls.put(variant.getKey(), mediaStore.urlFor(hash) + "/" + variant.getKey());
+        }
+        return urls;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private void render(String hash) {
+        try {
+            BufferedImage source = readBounded(hash);
+            if (source == null) {
+                return;
+            }
+
+            for (ImageVariant variant : ImageVariant.values()) {
+                Path target = mediaStore.variantPathFor(hash, variant);
+                if (Files.exists(target)) {
+                    continue;
+                }
+                BufferedImage scaled = scale(source, variant);
+                Files.createDirectories(target.getParent());
+                Path tmp = Files.createTempFile(target.getParent(), hash, ".part");
+                try {
+                    ImageIO.write(scaled, "jpg", tmp.toFile());
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Decoders throw unchecked exceptions on corrupt input as well as IOException
+            log.warn("Could not render image derivatives for blob {}: {}", hash, e.toString());
+        } catch (OutOfMemoryError e) {
+            // The decode buffer is garbage once we are out of here
+            log.error("Ran out of memory rendering image derivatives for blob {}", hash);
+        }
+    }
+
+    /**
+     * Decode an image blob, or return null if it is not an image or is too large
+     */
+    private BufferedImage readBounded(String hash) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(mediaStore.pathFor(hash).toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                log.debug("Blob {} is not a readable image, skipping derivatives", hash);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width <= 0 || height <= 0 || (long) width * height > maxSourcePixels) {
+                    log.warn("Blob {} is {}x{}, over the {} pixel limit, skipping derivatives",
+                            hash, width, height, maxSourcePixels);
+                    return null;
+                }
+
+                // Every variant is scaled from the decoded image, so keep its short side at least the largest variant
+                int largest = 0;
+                for (ImageVariant variant : ImageVariant.values()) {
+                    largest = Math.max(largest, variant.getSize());
+                }
+                int subsampling = Math.max(1, Math.min(width, height) / largest);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, ImageVariant variant) {
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int size = variant.getSize();
+
+        int cropX = 0;
+        int cropY = 0;
+        int cropWidth = srcWidth;
+        int cropHeight = srcHeight;
+        int width;
+        int height;
+
+        if (variant.isCrop()) {
+            int side = Math.min(srcWidth, srcHeight);
+            cropX = (srcWidth - side) / 2;
+            cropY = (srcHeight - side) / 2;
+            cropWidth = side;
+            cropHeight = side;
+            width = Math.min(size, side);
+            height = width;
+        } else {
+            double scale = Math.min(1.0, Math.min((double) size / srcWidth, (double) size / srcHeight));
+            width = Math.max(1, (int) Math.round(srcWidth * scale));
+            height = Math.max(1, (int) Math.round(srcHeight * scale));
+        }
+
+        // JPEG has no alpha channel, so always render into RGB
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, cropX, cropY, cropX + cropWidth, cropY + cropHeight, java.awt.Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private boolean allVariantsExist(String hash) {
+        for (ImageVariant variant : ImageVariant.values()) {
+            if (!Files.exists(mediaStore.variantPathFor(hash, variant))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RejectedExecutionHandler dropWhenFull() {
+        return (task, pool) -> {
+            if (!pool.isShutdown()) {
+                log.warn("Image derivative queue full, dropping task");
+            }
+        };
+    }
+}
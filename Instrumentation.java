@@ -0,0 +1,548 @@
+// MeteredService.java
+package com.socio.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Time every public method of a service class as socio.service{class,method,exception}
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MeteredService {
+}
+
+// ServiceMetricsAspect.java
+package com.socio.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.stereotype.Component;
+
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class ServiceMetricsAspect {
+
+    public static final String TIMER = "socio.service";
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("@within(com.socio.metrics.MeteredService) && execution(public * *(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(TIMER)
+                    .tag("class", AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName())
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+}
+
+// SqlStatementCounter.java
+package com.socio.metrics;
+
+import com.socio.exception.SqlBudgetExceededException;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread.
+ *
+ * Counts are kept per {@link SqlScope}; scopes nest (request, then each
+ * transactional method inside it) and a statement counts towards every open
+ * scope. Work handed to another thread keeps counting against the caller's
+ * scopes when it is wrapped with {@link #propagate}, as the shard scatter pool
+ * and the async task executor do. Registered as Hibernate's statement inspector
+ * by MetricsConfig. Statements issued through JdbcTemplate bypass Hibernate and
+ * are not counted.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<Deque<SqlScope>> SCOPES = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public static SqlScope open(String name, int budget, boolean failFast) {
+        SqlScope scope = new SqlScope(name, budget, failFast);
+        SCOPES.get().push(scope);
+        return scope;
+    }
+
+    /**
+     * Close a scope and any scope opened inside it that was not closed.
+     * Does nothing on a thread where the scope is not open.
+     */
+    public static void close(SqlScope scope) {
+        Deque<SqlScope> scopes = SCOPES.get();
+        if (!scopes.contains(scope)) {
+            if (scopes.isEmpty()) {
+                SCOPES.remove();
+            }
+            return;
+        }
+        while (!scopes.isEmpty()) {
+            if (scopes.pop() == scope) {
+                break;
+            }
+        }
+        if (scopes.isEmpty()) {
+            SCOPES.remove();
+        }
+    }
+
+    /**
+     * @return the outermost open scope on this thread, usually the request, or null
+     */
+    public static SqlScope outermost() {
+        return SCOPES.get().peekLast();
+    }
+
+    /**
+     * Wrap work for another thread so its statements count against the scopes open here
+     */
+    public static Runnable propagate(Runnable task) {
+        List<SqlScope> captured = capture();
+        if (captured.isEmpty()) {
+            return task;
+        }
+        return () -> runWith(captured, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        List<SqlScope> captured = capture();
+        if (captured.isEmpty()) {
+            return task;
+        }
+        return () -> runWith(captured, task);
+    }
+
+    private static List<SqlScope> capture() {
+        Deque<SqlScope> scopes = SCOPES.get();
+        if (scopes.isEmpty()) {
+            SCOPES.remove();
+        }
+        return new ArrayList<>(scopes);
+    }
+
+    private static <T> T runWith(List<SqlScope> captured, Supplier<T> task) {
+        // Replace rather than add, so a task run on the calling thread is not counted twice
+        Deque<SqlScope> previous = SCOPES.get();
+        SCOPES.set(new ArrayDeque<>(captured));
+        try {
+            return task.get();
+        } finally {
+            if (previous.isEmpty()) {
+                SCOPES.remove();
+            } else {
+                SCOPES.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        for (SqlScope scope : SCOPES.get()) {
+            if (scope.increment()) {
+                // Fail at the first statement over budget, before the response is written
+                throw new SqlBudgetExceededException("SQL budget exceeded in " + scope.getName() + ": "
+                        + scope.getCount() + " statements, budget " + scope.getBudget());
+            }
+        }
+        return sql;
+    }
+}
+
+// SqlScope.java
+package com.socio.metrics;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Statement count for one request or method call. Thread-safe, since work the
+ * scope propagated to other threads counts against it concurrently.
+ */
+@Getter
+public class SqlScope {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private volatile String name;
+    private volatile int budget;
+    private final boolean failFast;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger count = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    SqlScope(String name, int budget, boolean failFast) {
+        this.name = name;
+        this.budget = budget;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Set once the handler is known; the request scope is opened before that
+     */
+    public void assignBudget(String name, int budget) {
+        this.name = name;
+        this.budget = budget;
+    }
+
+    public int getCount() {
+        return count.get();
+    }
+
+    public boolean isFailed() {
+        return failed.get();
+    }
+
+    public boolean isExceeded() {
+        return count.get() > budget;
+    }
+
+    /**
+     * @return true if the caller should fail now; only the first statement over budget fails
+     */
+    boolean increment() {
+        return count.incrementAndGet() > budget && failFast && failed.compareAndSet(false, true);
+    }
+}
+
+// SqlStatementCountFilter.java
+package com.socio.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records how many SQL statements each request issued, per route, as socio.http.sql.statements,
+ * and checks the count against the route's {@link SqlBudget}. For an async request, e.g. a
+ * StreamingResponseBody, the count is recorded when the async work completes.
+ */
+@Component
+@RequiredArgsConstructor
+public class SqlStatementCountFilter extends OncePerRequestFilter {
+
+    public static final String SUMMARY = "socio.http.sql.statements";
+
+    private final MeterRegistry meterRegistry;
+    private final SqlBudgetGuard sqlBudgetGuard;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        SqlScope scope = sqlBudgetGuard.open(request.getMethod() + " " + request.getRequestURI(), SqlScope.UNLIMITED);
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            async = request.isAsyncStarted();
+        } finally {
+            if (async) {
+                // The body runs on the async executor, which propagates the scope; finish when it is done
+                SqlStatementCounter.close(scope);
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        finish(request, scope);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                finish(request, scope);
+            }
+        }
+    }
+
+    private void finish(HttpServletRequest request, SqlScope scope) {
+        sqlBudgetGuard.close(scope);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder(SUMMARY)
+                .tag("method", request.getMethod())
+                .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                .register(meterRegistry)
+                .record(scope.getCount());
+    }
+}
+
+// MetricsConfig.java
+package com.socio.metrics;
+
+import com.socio.cache.UserSummaryCache;
+import com.socio.media.HotBlobCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Latency histograms for repositories and services, SQL counting, and meters for
+ * the caches that are not Spring caches.
+ *
+ * Spring Boot already times every repository call as spring.data.repository.invocations;
+ * this adds the percentile histograms. Expose with
+ * management.endpoints.web.exposure.include=metrics,prometheus,instrumentation
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final String REPOSITORY_TIMER = "spring.data.repository.invocations";
+
+    @Bean
+    public MeterFilter latencyHistograms() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                String name = id.getName();
+                if (name.equals(REPOSITORY_TIMER) || name.equals(ServiceMetricsAspect.TIMER)
+                        || name.equals(SqlStatementCountFilter.SUMMARY) || name.equals(SqlBudgetGuard.SUMMARY)) {
+                    return DistributionStatisticConfig.builder()
+                            .percentilesHistogram(true)
+                            .percentiles(0.5, 0.99, 0.999)
+                            .build()
+                            .merge(config);
+                }
+                return config;
+            }
+        };
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer sqlStatementCounter() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementCounter());
+    }
+
+    /**
+     * Picked up by the application task executor, which also runs async MVC work such as
+     * StreamingResponseBody, so statements issued there count against the request
+     */
+    @Bean
+    public TaskDecorator sqlScopeTaskDecorator() {
+        return SqlStatementCounter::propagate;
+    }
+
+    /**
+     * Same meter names as Spring Boot's cache metrics, so every cache shows up on one dashboard
+     */
+    @Bean
+    public MeterBinder customCacheMetrics(UserSummaryCache userSummaryCache, HotBlobCache hotBlobCache) {
+        return registry -> {
+            FunctionCounter.builder("cache.gets", userSummaryCache, UserSummaryCache::getHitCount)
+                    .tags("cache", "userSummary", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", userSummaryCache, UserSummaryCache::getMissCount)
+                    .tags("cache", "userSummary", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", userSummaryCache, UserSummaryCache::getEvictionCount)
+                    .tags("cache", "userSummary").register(registry);
+            Gauge.builder("cache.size", userSummaryCache, UserSummaryCache::size)
+                    .tags("cache", "userSummary").register(registry);
+
+            FunctionCounter.builder("cache.gets", hotBlobCache, HotBlobCache::getHitCount)
+                    .tags("cache", "hotBlob", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", hotBlobCache, HotBlobCache::getMissCount)
+                    .tags("cache", "hotBlob", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", hotBlobCache, HotBlobCache::getEvictionCount)
+                    .tags("cache", "hotBlob").register(registry);
+            Gauge.builder("cache.size", hotBlobCache, HotBlobCache::size)
+                    .tags("cache", "hotBlob").register(registry);
+            Gauge.builder("socio.media.hot-cache.bytes", hotBlobCache, HotBlobCache::getTotalBytes)
+                    .register(registry);
+        };
+    }
+}
+
+// CacheConfig.java
+package com.socio.metrics;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Bounded Caffeine caches behind the @Cacheable service methods, with statistics on.
+ *
+ * All caches are created up front so Spring Boot's cache metrics binder sees them
+ * at startup and publishes cache.gets/cache.evictions/cache.size for each.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache("posts", spec(50_000, Duration.ofMinutes(5)));
+        cacheManager.registerCustomCache("userPosts", spec(10_000, Duration.ofMinutes(1)));
+        cacheManager.registerCustomCache("userFeed", spec(20_000, Duration.ofSeconds(30)));
+        cacheManager.registerCustomCache("groupPosts", spec(5_000, Duration.ofMinutes(1)));
+        cacheManager.registerCustomCache("userProfile", spec(50_000, Duration.ofMinutes(10)));
+        cacheManager.registerCustomCache("postsEngagement", spec(1_000, Duration.ofMinutes(5)));
+        cacheManager.registerCustomCache("postsByFileType", spec(1_000, Duration.ofMinutes(5)));
+        // Any cache not listed above is still bounded and still measured
+        cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(1_000).expireAfterWrite(Duration.ofMinutes(5)).recordStats());
+        return cacheManager;
+    }
+
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> spec(long maximumSize, Duration ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+}
+
+// InstrumentationEndpoint.java
+package com.socio.metrics;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.socio.cache.UserSummaryCache;
+import com.socio.media.HotBlobCache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/instrumentation: cache hit ratios and SQL statements per request at a glance.
+ * The full series are under /actuator/metrics.
+ */
+@Component
+@Endpoint(id = "instrumentation")
+@RequiredArgsConstructor
+public class InstrumentationEndpoint {
+
+    private final CacheManager cacheManager;
+    private final UserSummaryCache userSummaryCache;
+    private final HotBlobCache hotBlobCache;
+    private final MeterRegistry meterRegistry;
+
+    @ReadOperation
+    public Map<String, Object> instrumentation() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("caches", caches());
+        result.put("sqlStatementsPerRequest", sqlStatementsPerRequest());
+        return result;
+    }
+
+    private Map<String, Object> caches() {
+        Map<String, Object> caches = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            org.springframework.cache.Cache cache = cacheManager.getCache(name);
+            if (cache instanceof CaffeineCache) {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+                CacheStats stats = nativeCache.stats();
+                caches.put(name, cacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount(),
+                        nativeCache.estimatedSize()));
+            }
+        }
+        caches.put("userSummary", cacheStats(userSummaryCache.getHitCount(), userSummaryCache.getMissCount(),
+                userSummaryCache.getEvictionCount(), userSummaryCache.size()));
+        caches.put("hotBlob", cacheStats(hotBlobCache.getHitCount(), hotBlobCache.getMissCount(),
+                hotBlobCache.getEvictionCount(), hotBlobCache.size()));
+        return caches;
+    }
+
+    private Map<String, Object> sqlStatementsPerRequest() {
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (DistributionSummary summary : meterRegistry.find(SqlStatementCountFilter.SUMMARY).summaries()) {
+            HistogramSnapshot snapshot = summary.takeSnapshot();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", snapshot.count());
+            stats.put("mean", snapshot.mean());
+            stats.put("max", snapshot.max());
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                stats.put("p" + percentileLabel(percentile.percentile()), percentile.value());
+            }
+            routes.put(summary.getId().getTag("method") + " " + summary.getId().getTag("uri"), stats);
+        }
+        return routes;
+    }
+
+    private static Map<String, Object> cacheStats(long hits, long misses, long evictions, long size) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long requests = hits + misses;
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", requests == 0 ? 0.0 : (double) hits / requests);
+        stats.put("evictions", evictions);
+        stats.put("size", size);
+        return stats;
+    }
+
+    private static String percentileLabel(double percentile) {
+        // 0.5 -> 50, 0.99 -> 99, 0.999 -> 999
+        String digits = String.valueOf(percentile).substring(2);
+        return digits.length() == 1 ? digits + "0" : digits;
+    }
+}
@@ -1,5 +1,6 @@
 package com.socio.security;
 
+import com.socio.jfr.JwtAuthenticationEvent;
 import com.socio.service.JwtService;
 import com.socio.service.CustomUserDetailsService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,13 +33,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
         
+        JwtAuthenticationEvent event = new JwtAuthenticationEvent();
+        event.begin();
+        
         // Extract JWT token from request header
         String token = getJwtFromRequest(request);
+        event.tokenPresent = token != null;
         
         if (StringUtils.hasText(token) && jwtService.validateToken(token)) {
+            event.tokenValid = true;
             String username = jwtService.extractUsername(token);
 
             UserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
+            event.userLoaded = true;
 
             UsernamePasswordAuthenticationToken authentication =
                     new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
@@ -48,6 +55,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             SecurityContext securityContext = SecurityContextHolder.getContext();
             securityContext.setAuthentication(authentication);
         }
+        // Committed before the rest of the chain so the event covers authentication only
+        event.commit();
         
         filterChain.doFilter(request, response);
     }
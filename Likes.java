@@ -5,32 +5,49 @@ public class LikeService {
     private final LikeRepository likeRepository;
     private final PostRepository postRepository;
     private final UserRepository userRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardRouter shardRouter;
+    private final VersionStamps versionStamps;
 
     public void likePost(Long postId, String email) {
-        User user = userRepository.findByEmail(email)
+        User user = userSummaryCache.getByEmail(email)
+                .map(summary -> userRepository.getReferenceById(summary.getId()))
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
-        Post post = postRepository.findById(postId)
-                .orElseThrow(() -> new EntityNotFoundException("Post not found"));
 
-        if (likeRepository.existsByUserAndPost(user, post)) {
-            throw new IllegalStateException("Post already liked");
-        }
+        // The like is stored with its post
+        shardRouter.onPostShard(postId, () -> {
+            Post post = postRepository.findById(postId)
+                    .orElseThrow(() -> new EntityNotFoundException("Post not found"));
 
-        likeRepository.save(new Like(user, post));
-        post.incrementLikeCount();
+            if (likeRepository.existsByUserAndPost(user, post)) {
+                throw new IllegalStateException("Post already liked");
+            }
+
+            likeRepository.save(new Like(user, post));
+            post.incrementLikeCount();
+            eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.LIKE, user.getId(), post.getUserId(), postId));
+            return null;
+        });
     }
 
     public void unlikePost(Long postId, String email) {
-        User user = userRepository.findByEmail(email)
+        User user = userSummaryCache.getByEmail(email)
+                .map(summary -> userRepository.getReferenceById(summary.getId()))
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
-        Post post = postRepository.findById(postId)
-                .orElseThrow(() -> new EntityNotFoundException("Post not found"));
 
-        Like like = likeRepository.findByUserAndPost(user, post)
-                .orElseThrow(() -> new EntityNotFoundException("Like not found"));
+        shardRouter.onPostShard(postId, () -> {
+            Post post = postRepository.findById(postId)
+                    .orElseThrow(() -> new EntityNotFoundException("Post not found"));
+
+            Like like = likeRepository.findByUserAndPost(user, post)
+                    .orElseThrow(() -> new EntityNotFoundException("Like not found"));
 
-        likeRepository.delete(like);
-        post.decrementLikeCount();
+            likeRepository.delete(like);
+            post.decrementLikeCount();
+            return null;
+        });
+        versionStamps.postChanged(postId);
     }
 }
 
@@ -0,0 +1,662 @@
+// ZipfSampler.java
+package com.socio.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples ranks 1..n with probability proportional to 1/rank^exponent.
+ *
+ * Rank 1 is the most popular; the seeder maps rank r to id r, so low ids are
+ * the celebrities with huge follower counts and the hot posts.
+ */
+public class ZipfSampler {
+
+    private final double[] cdf;
+
+    public ZipfSampler(int n, double exponent) {
+        cdf = new double[n];
+        double sum = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            sum += 1.0 / Math.pow(rank, exponent);
+            cdf[rank - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return (index >= 0 ? index : -index - 1) + 1;
+    }
+}
+
+// SyntheticGraphSeeder.java
+package com.socio.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Fills an empty database with a deterministic social graph.
+ *
+ * The same seed and sizes always produce the same rows, so two runs against
+ * different builds see identical data. Ids are assigned explicitly and the
+ * identity columns are restarted afterwards, so the app can keep inserting.
+ * Everything goes in through JDBC batches of batchSize rows.
+ */
+@Slf4j
+public class SyntheticGraphSeeder {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Config config;
+
+    public SyntheticGraphSeeder(JdbcTemplate jdbcTemplate, Config config) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+    }
+
+    public void seed(String encodedPassword) {
+        long start = System.nanoTime();
+        seedUsers(encodedPassword);
+        seedFollows();
+        long posts = seedPosts();
+        seedLikes(posts);
+        seedComments(posts);
+        restartIdentity("users", config.users + 1);
+        restartIdentity("posts", posts + 1);
+        log.info("Seeded {} users and {} posts in {} s", config.users, posts, (System.nanoTime() - start) / 1_000_000_000);
+    }
+
+    private void seedUsers(String encodedPassword) {
+        Random random = new Random(config.seed);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Batch batch = new Batch("INSERT INTO users (id, email, name, password, date_of_birth, is_admin, is_private, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        for (long id = 1; id <= config.users; id++) {
+            LocalDate birthday = LocalDate.of(1960, 1, 1).plusDays(random.nextInt(365 * 45));
+            batch.add(id, LoadTestHarness.emailFor(id), "User " + id, encodedPassword, birthday,
+                    id == 1, random.nextDouble() < config.privateRatio, now);
+        }
+        batch.flush();
+    }
+
+    /**
+     * Every user follows a handful of others; who they follow is Zipf-distributed,
+     * which yields the long-tailed follower counts of a real network
+     */
+    private void seedFollows() {
+        Random random = new Random(config.seed + 1);
+        ZipfSampler popularity = new ZipfSampler(config.users, config.zipfExponent);
+        Batch batch = new Batch("INSERT INTO follows (follower_id, followee_id) VALUES (?, ?)");
+        Set<Integer> followees = new HashSet<>();
+        for (int follower = 1; follower <= config.users; follower++) {
+            int count = poisson(random, config.followsPerUser);
+            followees.clear();
+            for (int attempt = 0; followees.size() < count && attempt < count * 3; attempt++) {
+                int followee = popularity.sample(random);
+                if (followee != follower && followees.add(followee)) {
+                    batch.add(follower, followee);
+                }
+            }
+        }
+        batch.flush();
+    }
+
+    private long seedPosts() {
+        Random random = new Random(config.seed + 2);
+        ZipfSampler activity = new ZipfSampler(config.users, config.zipfExponent);
+        long total = (long) config.users * config.postsPerUser;
+        LocalDateTime newest = LocalDateTime.now();
+        Batch batch = new Batch("INSERT INTO posts (id, content, user_id, created_at, is_shared) VALUES (?, ?, ?, ?, false)");
+        for (long id = 1; id <= total; id++) {
+            // Spread posts over the last 90 days, newest ids newest
+            LocalDateTime createdAt = newest.minusSeconds((total - id) * 90L * 86400 / Math.max(total, 1));
+            batch.add(id, "Synthetic post " + id, activity.sample(random), Timestamp.valueOf(createdAt));
+        }
+        batch.flush();
+        return total;
+    }
+
+    private void seedLikes(long posts) {
+        Random random = new Random(config.seed + 3);
+        ZipfSampler hotPosts = new ZipfSampler((int) Math.min(posts, Integer.MAX_VALUE), config.zipfExponent);
+        Batch batch = new Batch("INSERT INTO likes (user_id, post_id) VALUES (?, ?)");
+        Set<Long> seen = new HashSet<>();
+        long total = posts * config.likesPerPost;
+        for (long i = 0; i < total; i++) {
+            int user = 1 + random.nextInt(config.users);
+            int post = hotPosts.sample(random);
+            // A user likes a post at most once
+            if (seen.add(((long) user << 32) | post)) {
+                batch.add(user, post);
+            }
+        }
+        batch.flush();
+    }
+
+    private void seedComments(long posts) {
+        Random random = new Random(config.seed + 4);
+        ZipfSampler hotPosts = new ZipfSampler((int) Math.min(posts, Integer.MAX_VALUE), config.zipfExponent);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Batch batch = new Batch("INSERT INTO comments (user_id, post_id, content, created_at) VALUES (?, ?, ?, ?)");
+        long total = posts * config.commentsPerPost;
+        for (long i = 0; i < total; i++) {
+            batch.add(1 + random.nextInt(config.users), hotPosts.sample(random), "Synthetic comment " + i, now);
+        }
+        batch.flush();
+    }
+
+    private void restartIdentity(String table, long next) {
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + next);
+    }
+
+    private static int poisson(Random random, double mean) {
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int count = 0;
+        while (product > limit) {
+            count++;
+            product *= random.nextDouble();
+        }
+        return count;
+    }
+
+    private final class Batch {
+        private final String sql;
+        private final List<Object[]> rows = new ArrayList<>(config.batchSize);
+
+        private Batch(String sql) {
+            this.sql = sql;
+        }
+
+        private void add(Object... row) {
+            rows.add(row);
+            if (rows.size() >= config.batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(sql, rows);
+                rows.clear();
+            }
+        }
+    }
+
+    public static class Config {
+        long seed = 42;
+        int users = 1_000_000;
+        double followsPerUser = 20;
+        int postsPerUser = 2;
+        int likesPerPost = 3;
+        int commentsPerPost = 1;
+        double zipfExponent = 1.1;
+        double privateRatio = 0.1;
+        int batchSize = 5_000;
+    }
+}
+
+// LatencyRecorder.java
+package com.socio.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Every latency sample for one endpoint, kept exactly so high percentiles are not interpolated
+ */
+public class LatencyRecorder {
+
+    private final String endpoint;
+    private long[] samples = new long[1 << 16];
+    private int count;
+    private int errors;
+
+    public LatencyRecorder(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public synchronized void record(long nanos, boolean success) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    public synchronized String report(double elapsedSeconds) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("%-14s %9d %8.1f/s %6d err  p50=%8.2f ms  p99=%8.2f ms  p999=%8.2f ms",
+                endpoint, count, count / elapsedSeconds, errors,
+                millis(sorted, 0.50), millis(sorted, 0.99), millis(sorted, 0.999));
+    }
+
+    public synchronized String toJson(double elapsedSeconds) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("{\"endpoint\":\"%s\",\"requests\":%d,\"errors\":%d,\"throughput\":%.2f," +
+                        "\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f}",
+                endpoint, count, errors, count / elapsedSeconds,
+                millis(sorted, 0.50), millis(sorted, 0.99), millis(sorted, 0.999));
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+}
+
+// LoadTestHarness.java
+package com.socio.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Boots the application on an embedded H2 database, seeds a synthetic graph and
+ * drives a mixed workload against the REST API over real HTTP.
+ *
+ * The load is open-loop: requests are issued at a fixed rate whether or not earlier
+ * ones have answered, and each latency is measured from the time the request was
+ * scheduled to go out. A stalled server therefore shows up as queueing delay in the
+ * percentiles, rather than as clients that quietly send less.
+ *
+ * Usage: LoadTestHarness [key=value ...]
+ *   app=com.socio.SocioApplication   the @SpringBootApplication class to boot
+ *   users=1000000 follows=20 posts=2 likes=3 comments=1 zipf=1.1 seed=42
+ *   rate=2000                        requests per second, across all sessions
+ *   sessions=200                     logged-in users the requests rotate over
+ *   duration=60 warmup=10            seconds
+ *   mix=feed:60,like:15,comment:10,follow:5,post:10
+ *   result=loadtest-result.json
+ *
+ * A million users with the default fan-out is roughly 30M rows; give the JVM
+ * a few GB of heap, or pass db=jdbc:h2:file:/tmp/socio-loadtest to keep it on disk.
+ */
+public class LoadTestHarness {
+
+    static final String PASSWORD = "loadtest-password";
+
+    private final Map<String, String> args;
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(4))
+            .build();
+    private String baseUrl;
+
+    public LoadTestHarness(Map<String, String> args) {
+        this.args = args;
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Map<String, String> args = new HashMap<>();
+        for (String arg : argv) {
+            int separator = arg.indexOf('=');
+            args.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new LoadTestHarness(args).run();
+    }
+
+    static String emailFor(long userId) {
+        return "user" + userId + "@loadtest.socio";
+    }
+
+    public void run() throws Exception {
+        SyntheticGraphSeeder.Config config = new SyntheticGraphSeeder.Config();
+        config.seed = Long.parseLong(arg("seed", "42"));
+        config.users = Integer.parseInt(arg("users", "1000000"));
+        config.followsPerUser = Double.parseDouble(arg("follows", "20"));
+        config.postsPerUser = Integer.parseInt(arg("posts", "2"));
+        config.likesPerPost = Integer.parseInt(arg("likes", "3"));
+        config.commentsPerPost = Integer.parseInt(arg("comments", "1"));
+        config.zipfExponent = Double.parseDouble(arg("zipf", "1.1"));
+
+        Path workDir = Files.createTempDirectory("socio-loadtest");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Class.forName(arg("app", "com.socio.SocioApplication")))
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=" + arg("db", "jdbc:h2:mem:socio;MODE=PostgreSQL;DB_CLOSE_DELAY=-1"),
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.datasource.hikari.maximum-pool-size=" + arg("dbPool", "20"),
+                        "spring.jpa.hibernate.ddl-auto=create",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=" + config.batchSize,
+                        "socio.media.root=" + workDir.resolve("media"),
+                        "socio.search.index-dir=" + workDir.resolve("search-index"),
+                        // Scheduled jobs would compete with the workload
+                        "socio.birthday.cron=-",
+                        "socio.typeahead.rebuild-cron=-")
+                .run();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            baseUrl = "http://localhost:" + port;
+
+            // One hash for everyone: hashing a million passwords would dominate the seeding time
+            String encoded = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+            new SyntheticGraphSeeder(context.getBean(JdbcTemplate.class), config).seed(encoded);
+
+            long postCount = (long) config.users * config.postsPerUser;
+            int sessions = Integer.parseInt(arg("sessions", "200"));
+            runWorkload(config, postCount, sessions);
+        } finally {
+            context.close();
+        }
+    }
+
+    private void runWorkload(SyntheticGraphSeeder.Config config, long postCount, int sessions) throws Exception {
+        Map<String, Integer> mix = parseMix(arg("mix", "feed:60,like:15,comment:10,follow:5,post:10"));
+        mix.keySet().forEach(endpoint -> recorders.put(endpoint, new LatencyRecorder(endpoint)));
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+
+        ZipfSampler hotUsers = new ZipfSampler(config.users, config.zipfExponent);
+        ZipfSampler hotPosts = new ZipfSampler((int) Math.min(postCount, Integer.MAX_VALUE), config.zipfExponent);
+
+        // Sessions log in as the first users; they are the best-connected ones
+        List<String> tokens = new ArrayList<>(sessions);
+        for (int i = 1; i <= sessions; i++) {
+            tokens.add(login(emailFor(i)));
+        }
+
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(arg("warmup", "10")));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(arg("duration", "60")));
+        double intervalNanos = 1e9 / Double.parseDouble(arg("rate", "2000"));
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+
+        // One thread issues every request on schedule; responses complete on the client's executor
+        Random random = new Random(config.seed * 31);
+        AtomicInteger inFlight = new AtomicInteger();
+        int maxInFlight = 0;
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            // If the loop fell behind, send at once; the delay counts against the request
+            String endpoint = pick(mix, totalWeight, random);
+            HttpRequest request = requestFor(endpoint, tokens.get((int) (i % sessions)), random, hotUsers, hotPosts);
+            maxInFlight = Math.max(maxInFlight, inFlight.incrementAndGet());
+            CompletableFuture<?> response = httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((result, error) -> {
+                        inFlight.decrementAndGet();
+                        if (intended >= measureFrom) {
+                            boolean success = error == null && result.statusCode() < 400;
+                            recorders.get(endpoint).record(System.nanoTime() - intended, success);
+                        }
+                        return null;
+                    });
+            if (intended >= measureFrom) {
+                pending.add(response);
+            }
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).get(1, TimeUnit.MINUTES);
+        } catch (TimeoutException e) {
+            System.out.println(inFlight.get() + " requests still outstanding after the run; they are not counted");
+        }
+        System.out.println("Peak requests in flight: " + maxInFlight);
+
+        double seconds = durationNanos / 1e9;
+        recorders.values().forEach(recorder -> System.out.println(recorder.report(seconds)));
+        String json = recorders.values().stream()
+                .map(recorder -> recorder.toJson(seconds))
+                .collect(Collectors.joining(",\n  ", "[\n  ", "\n]\n"));
+        Files.write(Paths.get(arg("result", "loadtest-result.json")), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private HttpRequest requestFor(String endpoint, String token, Random random,
+                                   ZipfSampler hotUsers, ZipfSampler hotPosts) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + token);
+        switch (endpoint) {
+            case "feed":
+                return builder.uri(uri("/api/posts/feed?page=0&size=20")).GET().build();
+            case "like":
+                return builder.uri(uri("/likes/" + hotPosts.sample(random))).POST(HttpRequest.BodyPublishers.noBody()).build();
+            case "comment":
+                return builder.uri(uri("/comments/" + hotPosts.sample(random)))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"content\":\"load test comment\"}"))
+                        .build();
+            case "follow":
+                return builder.uri(uri("/api/users/" + hotUsers.sample(random) + "/follow"))
+                        .POST(HttpRequest.BodyPublishers.noBody()).build();
+            case "post":
+                String boundary = "socio-loadtest-" + random.nextLong();
+                String body = "--" + boundary + "\r\n" +
+                        "Content-Disposition: form-data; name=\"request\"\r\n" +
+                        "Content-Type: application/json\r\n\r\n" +
+                        "{\"content\":\"load test post " + random.nextInt() + "\"}\r\n" +
+                        "--" + boundary + "--\r\n";
+                return builder.uri(uri("/api/posts"))
+                        .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+            default:
+                throw new IllegalArgumentException("Unknown endpoint in mix: " + endpoint);
+        }
+    }
+
+    private String login(String email) throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(Map.of("email", email, "password", PASSWORD));
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri(arg("loginPath", "/api/auth/login")))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login failed for " + email + ": HTTP " + response.statusCode());
+        }
+        JsonNode json = objectMapper.readTree(response.body());
+        return json.get("token").asText();
+    }
+
+    private static String pick(Map<String, Integer> mix, int totalWeight, Random random) {
+        int roll = random.nextInt(totalWeight);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty workload mix");
+    }
+
+    private static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.split(":");
+            mix.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        return mix;
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private String arg(String key, String defaultValue) {
+        return args.getOrDefault(key, defaultValue);
+    }
+}
+
+// ShardRoutingCheck.java
+package com.socio.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socio.sharding.ShardIdGenerator;
+import com.socio.sharding.ShardRouter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Boots the application on three embedded H2 shards and reads a post that lives on
+ * shard 1 over real HTTP. The request first loads the caller on the home shard, so a
+ * request-scoped EntityManager (open-in-view) would look for the post on shard 0 and
+ * answer 404. Also checks that sharding refuses to start with open-in-view left on.
+ *
+ * Usage: ShardRoutingCheck [app=com.socio.SocioApplication]
+ * Exits with an exception on the first failed check.
+ */
+public class ShardRoutingCheck {
+
+    private static final String EMAIL = "shard-check@loadtest.socio";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    public static void main(String[] argv) throws Exception {
+        String app = argv.length > 0 ? argv[0].substring(argv[0].indexOf('=') + 1) : "com.socio.SocioApplication";
+        ShardRoutingCheck check = new ShardRoutingCheck();
+        check.refusesOpenInView(Class.forName(app));
+        check.readsPostFromOtherShard(Class.forName(app));
+        System.out.println("Shard routing checks passed");
+    }
+
+    private void refusesOpenInView(Class<?> app) throws Exception {
+        ConfigurableApplicationContext context;
+        try {
+            context = boot(app, "open-in-view", true);
+        } catch (RuntimeException expected) {
+            return;
+        }
+        context.close();
+        throw new IllegalStateException("Sharding started with spring.jpa.open-in-view=true");
+    }
+
+    private void readsPostFromOtherShard(Class<?> app) throws Exception {
+        try (ConfigurableApplicationContext context = boot(app, "reads", false)) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            ShardRouter shardRouter = context.getBean(ShardRouter.class);
+            String encoded = context.getBean(PasswordEncoder.class).encode(LoadTestHarness.PASSWORD);
+
+            jdbcTemplate.update("INSERT INTO users (id, email, name, password, date_of_birth, is_admin, is_private, created_at) " +
+                            "VALUES (?, ?, ?, ?, ?, false, false, ?)",
+                    1L, EMAIL, "Shard Check", encoded, LocalDate.of(1990, 1, 1), Timestamp.valueOf(LocalDateTime.now()));
+            long postId = ShardIdGenerator.get().next(1);
+            shardRouter.onShard(1, () -> jdbcTemplate.update(
+                    "INSERT INTO posts (id, content, user_id, created_at, is_shared) VALUES (?, ?, ?, ?, false)",
+                    postId, "Stored on shard 1", 1L, Timestamp.valueOf(LocalDateTime.now())));
+
+            String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            String token = login(baseUrl);
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/posts/" + postId))
+                            .header("Authorization", "Bearer " + token)
+                            .GET()
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Post " + postId + " on shard 1: HTTP " + response.statusCode());
+            }
+            if (!"Stored on shard 1".equals(objectMapper.readTree(response.body()).path("content").asText())) {
+                throw new IllegalStateException("Post " + postId + " on shard 1 came back as " + response.body());
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext boot(Class<?> app, String name, boolean openInView) throws Exception {
+        Path workDir = Files.createTempDirectory("socio-shard-check");
+        List<String> properties = new ArrayList<>(Arrays.asList(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:" + name + "0;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "spring.datasource.driver-class-name=org.h2.Driver",
+                "spring.jpa.hibernate.ddl-auto=create",
+                "spring.jpa.open-in-view=" + openInView,
+                "socio.sharding.enabled=true",
+                "socio.sharding.copy-h2-schema=true",
+                "socio.media.root=" + workDir.resolve("media"),
+                "socio.search.index-dir=" + workDir.resolve("search-index"),
+                "socio.birthday.cron=-",
+                "socio.typeahead.rebuild-cron=-"));
+        for (int shard = 0; shard < 3; shard++) {
+            properties.add("socio.sharding.urls[" + shard + "]=jdbc:h2:mem:" + name + shard + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        }
+        return new SpringApplicationBuilder(app).properties(properties.toArray(new String[0])).run();
+    }
+
+    private String login(String baseUrl) throws Exception {
+        String body = objectMapper.writeValueAsString(Map.of("email", EMAIL, "password", LoadTestHarness.PASSWORD));
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login failed: HTTP " + response.statusCode());
+        }
+        JsonNode json = objectMapper.readTree(response.body());
+        return json.get("token").asText();
+    }
+}
@@ -0,0 +1,374 @@
+// HotBlobCache.java
+package com.socio.media;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Small LRU cache of memory-mapped blobs for the most requested media.
+ *
+ * Only blobs up to maxBlobBytes are mapped. Evicted mappings are released
+ * by the GC, so the total stays bounded by maxTotalBytes plus whatever
+ * is still being written out.
+ */
+@Component
+public class HotBlobCache {
+
+    private final LinkedHashMap<String, MappedByteBuffer> mappings = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Value("${socio.media.hot-cache.max-blob-bytes:4194304}")
+    private long maxBlobBytes;
+
+    @Value("${socio.media.hot-cache.max-total-bytes:268435456}")
+    private long maxTotalBytes;
+
+    /**
+     * Get a read-only view of the mapped blob, mapping it if it is small enough
+     *
+     * @return the mapping, or null if the blob is too large to cache
+     */
+    public MappedByteBuffer get(String hash, Path path, long size) throws IOException {
+        if (size > maxBlobBytes) {
+            return null;
+        }
+
+        synchronized (this) {
+            MappedByteBuffer cached = mappings.get(hash);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        synchronized (this) {
+            MappedByteBuffer raced = mappings.putIfAbsent(hash, mapped);
+            if (raced != null) {
+                return raced;
+            }
+            totalBytes += size;
+            evictOverflow();
+        }
+        return mapped;
+    }
+
+    public synchronized void invalidate(String hash) {
+        MappedByteBuffer removed = mappings.remove(hash);
+        if (removed != null) {
+            totalBytes -= removed.capacity();
+        }
+    }
+
+    public synchronized int size() {
+        return mappings.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, MappedByteBuffer>> it = mappings.entrySet().iterator();
+        while (totalBytes > maxTotalBytes && it.hasNext()) {
+            totalBytes -= it.next().getValue().capacity();
+            it.remove();
+            evictions.increment();
+        }
+    }
+}
+
+// MediaController.java
+package com.socio.controller;
+
+import com.socio.entity.MediaBlob;
+import com.socio.jfr.MediaStoreEvent;
+import com.socio.media.HotBlobCache;
+import com.socio.media.ImageVariant;
+import com.socio.media.MediaStore;
+import com.socio.repository.MediaBlobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Serves media blobs with HTTP Range and ETag support, so audio and video can be seeked
+ */
+@RestController
+@RequestMapping("/api/media")
+@RequiredArgsConstructor
+public class MediaController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Content-addressed, so never stale, but private: blobs of private accounts must not sit in CDNs or shared proxies
+    private static final String IMMUTABLE = "private, max-age=31536000, immutable";
+
+    private final MediaStore mediaStore;
+    private final MediaBlobRepository mediaBlobRepository;
+    private final HotBlobCache hotBlobCache;
+
+    /**
+     * Get a media blob by hash
+     */
+    @GetMapping("/{hash}")
+    public void getMedia(@PathVariable String hash,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        if (!MediaStore.isValidHash(hash)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        serveOriginal(hash, IMMUTABLE, request, response);
+    }
+
+    /**
+     * Get a rendered image variant, or the original image while the variant is still pending
+     */
+    @GetMapping("/{hash}/{variant}")
+    public void getImageVariant(@PathVariable String hash,
+                                @PathVariable("variant") String variantKey,
+                                HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
+        ImageVariant variant = ImageVariant.fromKey(variantKey);
+        if (!MediaStore.isValidHash(hash) || variant == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Path path = mediaStore.variantPathFor(hash, variant);
+        if (!Files.exists(path)) {
+            // Don't let clients cache the original under the variant URL
+            serveOriginal(hash, "no-cache", request, response);
+            return;
+        }
+
+        String etag = "\"" + hash + "-" + variant.getKey() + "\"";
+        if (notModified(request, response, etag, IMMUTABLE)) {
+            return;
+        }
+        serve(MediaStore.variantCacheKey(hash, variant), path, Files.size(path), "image/jpeg", etag, request, response);
+    }
+
+    private void serveOriginal(String hash, String cacheControl,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Look the blob up first, so a tag for a hash that was never stored gets 404, not 304
+        Optional<MediaBlob> blob = mediaBlobRepository.findById(hash);
+        Path path = mediaStore.pathFor(hash);
+        if (blob.isEmpty() || !Files.exists(path)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // Blobs are content-addressed, so the hash is a strong validator on its own
+        String etag = "\"" + hash + "\"";
+        if (notModified(request, response, etag, cacheControl)) {
+            return;
+        }
+        String contentType = blob.get().getContentType() != null ? blob.get().getContentType() : "application/octet-stream";
+        serve(hash, path, blob.get().getSize(), contentType, etag, request, response);
+    }
+
+    private boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                                String etag, String cacheControl) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (matchesEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    private void serve(String cacheKey, Path path, long length, String contentType, String etag,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] parsed = parseRange(range, length);
+            if (parsed == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        MediaStoreEvent event = new MediaStoreEvent();
+        event.begin();
+        event.operation = "SERVE";
+        event.bytes = count;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(contentType);
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+        try {
+            write(cacheKey, path, length, start, end, request, response, event);
+        } finally {
+            event.commit();
+        }
+    }
+
+    private void write(String cacheKey, Path path, long length, long start, long end,
+                       HttpServletRequest request, HttpServletResponse response,
+                       MediaStoreEvent event) throws IOException {
+        // Let Tomcat write the file with sendfile when the connector supports it
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            event.sendfile = true;
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+
+        MappedByteBuffer mapped = hotBlobCache.get(cacheKey, path, length);
+        if (mapped != null) {
+            event.hotCache = true;
+            ByteBuffer slice = mapped.duplicate();
+            slice.position((int) start);
+            slice.limit((int) (end + 1));
+            while (slice.hasRemaining()) {
+                target.write(slice);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long position = start;
+                long remaining = end - start + 1;
+                while (remaining > 0) {
+                    long written = channel.transferTo(position, remaining, target);
+                    position += written;
+                    remaining -= written;
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Parse a single "bytes=" range
+     *
+     * @return {start, end} for a satisfiable range, an empty array to serve the whole
+     *         blob (malformed, reversed or multi-range requests), or null if unsatisfiable
+     */
+    private long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) {
+                    return new long[0];
+                }
+                if (suffix == 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                long requestedEnd = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (requestedEnd < start) {
+                    // Not a valid range at all, so RFC 7233 has it ignored rather than refused
+                    return new long[0];
+                }
+                end = Math.min(requestedEnd, length - 1);
+            }
+            if (start >= length) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,379 @@
+// MediaBlob.java
+package com.socio.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * A stored media file, addressed by the SHA-256 of its content.
+ * Posts reference blobs by hash; refCount tracks how many posts do.
+ */
+@Entity
+@Table(name = "media_blobs", indexes = @Index(name = "idx_media_blobs_unreferenced", columnList = "refCount, releasedAt"))
+@Data
+@NoArgsConstructor
+public class MediaBlob {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    private long size;
+
+    private String contentType;
+
+    private long refCount;
+
+    private LocalDateTime createdAt;
+
+    // Set when refCount drops to zero, used for the sweeper grace period
+    private LocalDateTime releasedAt;
+
+    public MediaBlob(String hash, long size, String contentType) {
+        this.hash = hash;
+        this.size = size;
+        this.contentType = contentType;
+        this.refCount = 1;
+        this.createdAt = LocalDateTime.now();
+    }
+}
+
+// MediaStore.java
+package com.socio.media;
+
+import com.socio.exception.FileStorageException;
+import com.socio.jfr.MediaStoreEvent;
+import com.socio.repository.MediaBlobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Content-addressed, deduplicated store for post attachments.
+ *
+ * Uploads are hashed while they are streamed to a temp file, so identical
+ * files end up as one blob on disk no matter how often they are uploaded.
+ * Blobs live under {root}/ab/cd/{hash} and are reference counted in media_blobs.
+ *
+ * Files follow the database: a file written by an upload whose transaction rolls
+ * back, and the files of a reclaimed blob, are deleted only once the transaction has
+ * completed, and only if no committed row and no upload still in flight needs them.
+ */
+@Service
+@RequiredArgsConstructor
+public class MediaStore {
+
+    public static final String URL_PREFIX = "/api/media/";
+
+    private static final int LOCK_STRIPES = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MediaBlobRepository mediaBlobRepository;
+    private final HotBlobCache hotBlobCache;
+    private final PlatformTransactionManager transactionManager;
+
+    // One lock per hash stripe so the sweeper never deletes a file an upload is re-using.
+    // ReentrantLock rather than synchronized: the critical sections do JDBC, which would pin a virtual thread.
+    private final ReentrantLock[] locks = createLocks();
+    // Uploads per hash whose transaction has not completed yet; guarded by the hash's stripe lock
+    private final ConcurrentHashMap<String, Integer> inFlight = new ConcurrentHashMap<>();
+    private TransactionTemplate freshTransaction;
+
+    @Value("${socio.media.root:media}")
+    private String root;
+
+    @PostConstruct
+    public void init() {
+        // Completion callbacks must not reuse the finished transaction
+        freshTransaction = new TransactionTemplate(transactionManager);
+        freshTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        freshTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Store an uploaded file and take a reference on its blob
+     *
+     * @return the hash of the stored content
+     */
+    @Transactional
+    public String store(MultipartFile file) {
+        MediaStoreEvent event = new MediaStoreEvent();
+        event.begin();
+        event.operation = "STORE";
+        Path tmpDir = rootPath().resolve("tmp");
+        Path tmp = null;
+        try {
+            Files.createDirectories(tmpDir);
+            tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+                 OutputStream out = Files.newOutputStream(tmp)) {
+                size = in.transferTo(out);
+            }
+            String hash = toHex(digest.digest());
+            event.bytes = size;
+
+            ReentrantLock lock = lockFor(hash);
+            lock.lock();
+            try {
+                Path target = pathFor(hash);
+                boolean created = false;
+                if (Files.exists(target)) {
+                    // Duplicate upload, the bytes we already have are identical
+                    Files.delete(tmp);
+                    event.duplicate = true;
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try {
+                        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                        created = true;
+                    } catch (FileAlreadyExistsException e) {
+                        Files.delete(tmp);
+                    }
+                }
+                tmp = null;
+
+                // Marked in flight before the lock is released, so a pending reclaim keeps the file
+                inFlight.merge(hash, 1, Integer::sum);
+                boolean createdFile = created;
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        finishStore(hash, createdFile, status == STATUS_COMMITTED);
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+
+            mediaBlobRepository.acquire(hash, size, file.getContentType(), LocalDateTime.now());
+            return hash;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new FileStorageException("Could not store file: " + e.getMessage());
+        } finally {
+            event.commit();
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // Leftover temp files are harmless
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop one reference to a blob. The file itself is reclaimed later by the sweeper.
+     */
+    @Transactional
+    public void release(String hash) {
+        mediaBlobRepository.decrementRefCount(hash, LocalDateTime.now());
+    }
+
+    /**
+     * Delete a blob if it is still unreferenced. The row goes with the transaction,
+     * the files once it has committed.
+     *
+     * @return true if the blob was reclaimed
+     */
+    @Transactional
+    public boolean reclaim(String hash) {
+        if (mediaBlobRepository.deleteIfUnreferenced(hash) == 0) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ReentrantLock lock = lockFor(hash);
+                lock.lock();
+                try {
+                    deleteIfOrphaned(hash, "RECLAIM");
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+        return true;
+    }
+
+    public String urlFor(String hash) {
+        return URL_PREFIX + hash;
+    }
+
+    public Path pathFor(String hash) {
+        return rootPath().resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    public Path variantPathFor(String hash, ImageVariant variant) {
+        return rootPath().resolve("variants").resolve(hash.substring(0, 2)).resolve(hash + "-" + variant.getKey() + ".jpg");
+    }
+
+    public static String variantCacheKey(String hash, ImageVariant variant) {
+        return hash + "-" + variant.getKey();
+    }
+
+    public static boolean isValidHash(String hash) {
+        if (hash == null || hash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Path rootPath() {
+        return Paths.get(root);
+    }
+
+    private void finishStore(String hash, boolean createdFile, boolean committed) {
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            inFlight.computeIfPresent(hash, (key, count) -> count > 1 ? count - 1 : null);
+            if (!committed && createdFile) {
+                deleteIfOrphaned(hash, "ROLLBACK");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete a blob's files unless a committed row or an in-flight upload still needs them.
+     * Caller holds the hash's stripe lock.
+     */
+    private void deleteIfOrphaned(String hash, String operation) {
+        if (inFlight.containsKey(hash)
+                || Boolean.TRUE.equals(freshTransaction.execute(status -> mediaBlobRepository.existsById(hash)))) {
+            return;
+        }
+        MediaStoreEvent event = new MediaStoreEvent();
+        event.begin();
+        event.operation = operation;
+        hotBlobCache.invalidate(hash);
+        try {
+            if (event.isEnabled() && Files.exists(pathFor(hash))) {
+                event.bytes = Files.size(pathFor(hash));
+            }
+            Files.deleteIfExists(pathFor(hash));
+            for (ImageVariant variant : ImageVariant.values()) {
+                hotBlobCache.invalidate(variantCacheKey(hash, variant));
+                Files.deleteIfExists(variantPathFor(hash, variant));
+            }
+        } catch (IOException e) {
+            throw new FileStorageException("Could not delete blob " + hash + ": " + e.getMessage());
+        }
+        event.commit();
+    }
+
+    private ReentrantLock lockFor(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static ReentrantLock[] createLocks() {
+        ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+}
+
+// MediaBlobSweeper.java
+package com.socio.media;
+
+import com.socio.repository.MediaBlobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Background job that reclaims blobs no post references any more.
+ * A grace period keeps a just-released blob around in case it is uploaded again.
+ */
+@Slf4j
+@Component
+@EnableScheduling
+@RequiredArgsConstructor
+public class MediaBlobSweeper {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final MediaBlobRepository mediaBlobRepository;
+    private final MediaStore mediaStore;
+
+    @Value("${socio.media.sweep-grace-minutes:60}")
+    private long graceMinutes;
+
+    @Scheduled(fixedDelayString = "${socio.media.sweep-interval-ms:600000}")
+    public void sweep() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(graceMinutes);
+        int reclaimed = 0;
+
+        List<String> hashes;
+        do {
+            hashes = mediaBlobRepository.findUnreferencedHashes(cutoff, PageRequest.of(0, BATCH_SIZE));
+            for (String hash : hashes) {
+                if (mediaStore.reclaim(hash)) {
+                    reclaimed++;
+                }
+            }
+        } while (hashes.size() == BATCH_SIZE);
+
+        if (reclaimed > 0) {
+            log.info("Reclaimed {} unreferenced media blobs", reclaimed);
+        }
+    }
+}
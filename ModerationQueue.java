@@ -0,0 +1,341 @@
+// ModerationItemDto.java
+package com.socio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One reported post in the moderation queue, with its reports aggregated
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModerationItemDto {
+    private Long postId;
+    private long reportCount;
+    private LocalDateTime lastReportedAt;
+    private double priority;
+    private List<String> recentReasons;
+}
+
+// ModerationPage.java
+package com.socio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModerationPage {
+    private List<ModerationItemDto> items;
+    // Pass back as ?cursor= to get the next page, null on the last page
+    private String nextCursor;
+}
+
+// ModerationQueue.java
+package com.socio.service;
+
+import com.socio.dto.ModerationItemDto;
+import com.socio.dto.ModerationPage;
+import com.socio.entity.ReportStatus;
+import com.socio.exception.BadRequestException;
+import com.socio.repository.ReportAggregate;
+import com.socio.repository.ReportReason;
+import com.socio.repository.ReportRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Pending reports aggregated per post and kept ranked by priority.
+ *
+ * Priority grows with the log of the report count and linearly with the time of
+ * the latest report, so it never has to be recomputed as time passes. The queue
+ * is rebuilt from the database periodically to pick up reports made on other nodes.
+ * Reports and removals that arrive while a rebuild is reading are replayed onto the
+ * new snapshot before it is swapped in. The rebuild reads a single snapshot and asks
+ * that same snapshot which of those reports it already holds, so each is counted once.
+ */
+@Component
+public class ModerationQueue {
+
+    private static final int RECENT_REASONS = 3;
+    // Seconds of recency that weigh as much as doubling the report count
+    private static final double RECENCY_SECONDS = 45000;
+
+    private static final Comparator<Entry> BY_PRIORITY = Comparator
+            .comparingDouble((Entry e) -> e.priority).reversed()
+            .thenComparing(e -> e.postId);
+
+    private final ReportRepository reportRepository;
+    // One snapshot for the aggregate and the check of reports made while it was read
+    private final TransactionTemplate snapshot;
+
+    private NavigableSet<Entry> ranked = new TreeSet<>(BY_PRIORITY);
+    private Map<Long, Entry> byPost = new HashMap<>();
+    // Changes made while a rebuild is reading, in order; null when no rebuild is running
+    private List<Change> pendingChanges;
+
+    public ModerationQueue(ReportRepository reportRepository, PlatformTransactionManager transactionManager) {
+        this.reportRepository = reportRepository;
+        this.snapshot = new TransactionTemplate(transactionManager);
+        this.snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshot.setReadOnly(true);
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${socio.moderation.rebuild-interval-ms:300000}")
+    public void rebuild() {
+        synchronized (this) {
+            pendingChanges = new ArrayList<>();
+        }
+        try {
+            snapshot.executeWithoutResult(status -> swapIn(readAggregates()));
+        } finally {
+            synchronized (this) {
+                pendingChanges = null;
+            }
+        }
+    }
+
+    private Map<Long, Entry> readAggregates() {
+        Map<Long, Entry> freshByPost = new HashMap<>();
+        for (ReportAggregate aggregate : reportRepository.aggregatePendingByPost(ReportStatus.PENDING)) {
+            Entry entry = new Entry(aggregate.getPostId(), aggregate.getReportCount(), aggregate.getLastReportedAt());
+            freshByPost.put(entry.postId, entry);
+        }
+        return freshByPost;
+    }
+
+    /**
+     * Replace the live queue with the snapshot, then replay what changed since it was read.
+     * Runs inside the snapshot's transaction.
+     */
+    private synchronized void swapIn(Map<Long, Entry> freshByPost) {
+        // Reports made during the read that the aggregate already counted
+        Set<Long> reportIds = pendingChanges.stream()
+                .filter(change -> !change.removed)
+                .map(change -> change.reportId)
+                .collect(Collectors.toSet());
+        Set<Long> counted = reportIds.isEmpty()
+                ? new HashSet<>()
+                : new HashSet<>(reportRepository.findIdsByIdInAndStatus(reportIds, ReportStatus.PENDING));
+
+        NavigableSet<Entry> freshRanked = new TreeSet<>(BY_PRIORITY);
+        for (Entry entry : freshByPost.values()) {
+            // Keep the reasons we already know about
+            Entry old = byPost.get(entry.postId);
+            if (old != null) {
+                entry.recentReasons = old.recentReasons;
+            }
+            freshRanked.add(entry);
+        }
+        List<Change> changes = pendingChanges;
+        pendingChanges = null;
+        ranked = freshRanked;
+        byPost = freshByPost;
+        for (Change change : changes) {
+            if (change.removed) {
+                removeEntry(change.postId);
+            } else if (!counted.contains(change.reportId)) {
+                addReport(change.postId, change.reason, change.reportedAt);
+            }
+        }
+    }
+
+    public synchronized void recordReport(Long reportId, Long postId, String reason, LocalDateTime reportedAt) {
+        if (pendingChanges != null) {
+            pendingChanges.add(new Change(reportId, postId, false, reason, reportedAt));
+        }
+        addReport(postId, reason, reportedAt);
+    }
+
+    public synchronized void remove(Collection<Long> postIds) {
+        for (Long postId : postIds) {
+            if (pendingChanges != null) {
+                pendingChanges.add(new Change(null, postId, true, null, null));
+            }
+            removeEntry(postId);
+        }
+    }
+
+    private void addReport(Long postId, String reason, LocalDateTime reportedAt) {
+        Entry entry = byPost.get(postId);
+        if (entry == null) {
+            entry = new Entry(postId, 1, reportedAt);
+            entry.recentReasons = new ArrayDeque<>(RECENT_REASONS);
+            byPost.put(postId, entry);
+        } else {
+            ranked.remove(entry);
+            entry.reportCount++;
+            if (entry.lastReportedAt == null || reportedAt.isAfter(entry.lastReportedAt)) {
+                entry.lastReportedAt = reportedAt;
+            }
+            entry.priority = priority(entry.reportCount, entry.lastReportedAt);
+        }
+        // Entries loaded by rebuild() without reasons read this one from the table with the rest
+        if (entry.recentReasons != null) {
+            if (entry.recentReasons.size() == RECENT_REASONS) {
+                entry.recentReasons.removeLast();
+            }
+            entry.recentReasons.addFirst(reason);
+        }
+        ranked.add(entry);
+    }
+
+    private void removeEntry(Long postId) {
+        Entry entry = byPost.remove(postId);
+        if (entry != null) {
+            ranked.remove(entry);
+        }
+    }
+
+    /**
+     * Get one page of the queue, highest priority first
+     *
+     * @param cursor the nextCursor of the previous page, or null for the first page
+     * @param size the page size
+     */
+    public ModerationPage page(String cursor, int size) {
+        List<Entry> entries = new ArrayList<>(size);
+        boolean more;
+        synchronized (this) {
+            Iterable<Entry> from = cursor == null ? ranked : ranked.tailSet(decodeCursor(cursor), false);
+            for (Entry entry : from) {
+                if (entries.size() == size) {
+                    break;
+                }
+                entries.add(entry.copy());
+            }
+            more = !entries.isEmpty() && ranked.higher(entries.get(entries.size() - 1)) != null;
+        }
+
+        loadMissingReasons(entries);
+        List<ModerationItemDto> items = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            items.add(new ModerationItemDto(entry.postId, entry.reportCount, entry.lastReportedAt,
+                    entry.priority, new ArrayList<>(entry.recentReasons)));
+        }
+        String nextCursor = more ? encodeCursor(entries.get(entries.size() - 1)) : null;
+        return new ModerationPage(items, nextCursor);
+    }
+
+    /**
+     * Entries loaded by rebuild() fetch their reasons on first display, one query for the page
+     */
+    private void loadMissingReasons(List<Entry> entries) {
+        Map<Long, Entry> missing = new HashMap<>();
+        for (Entry entry : entries) {
+            if (entry.recentReasons == null) {
+                entry.recentReasons = new ArrayDeque<>(RECENT_REASONS);
+                missing.put(entry.postId, entry);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        // Newest first; ties on createdAt can return a fourth row, which is dropped
+        for (ReportReason row : reportRepository.findRecentReasons(missing.keySet(), ReportStatus.PENDING, RECENT_REASONS)) {
+            Deque<String> reasons = missing.get(row.getPostId()).recentReasons;
+            if (reasons.size() < RECENT_REASONS) {
+                reasons.addLast(row.getReason());
+            }
+        }
+        synchronized (this) {
+            for (Entry entry : missing.values()) {
+                Entry live = byPost.get(entry.postId);
+                if (live != null && live.recentReasons == null) {
+                    live.recentReasons = new ArrayDeque<>(entry.recentReasons);
+                }
+            }
+        }
+    }
+
+    private static double priority(long reportCount, LocalDateTime lastReportedAt) {
+        double recency = lastReportedAt != null ? lastReportedAt.toEpochSecond(ZoneOffset.UTC) / RECENCY_SECONDS : 0;
+        return Math.log(1 + reportCount) / Math.log(2) + recency;
+    }
+
+    private static String encodeCursor(Entry entry) {
+        return entry.priority + "_" + entry.postId;
+    }
+
+    private static Entry decodeCursor(String cursor) {
+        int separator = cursor.lastIndexOf('_');
+        if (separator < 0) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        try {
+            Entry probe = new Entry(Long.valueOf(cursor.substring(separator + 1)), 0, null);
+            probe.priority = Double.parseDouble(cursor.substring(0, separator));
+            return probe;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    private static class Change {
+        private final Long reportId;
+        private final Long postId;
+        private final boolean removed;
+        private final String reason;
+        private final LocalDateTime reportedAt;
+
+        Change(Long reportId, Long postId, boolean removed, String reason, LocalDateTime reportedAt) {
+            this.reportId = reportId;
+            this.postId = postId;
+            this.removed = removed;
+            this.reason = reason;
+            this.reportedAt = reportedAt;
+        }
+    }
+
+    private static class Entry {
+        private final Long postId;
+        private long reportCount;
+        private LocalDateTime lastReportedAt;
+        private double priority;
+        private Deque<String> recentReasons;
+
+        Entry(Long postId, long reportCount, LocalDateTime lastReportedAt) {
+            this.postId = postId;
+            this.reportCount = reportCount;
+            this.lastReportedAt = lastReportedAt;
+            this.priority = priority(reportCount, lastReportedAt);
+        }
+
+        Entry copy() {
+            Entry copy = new Entry(postId, reportCount, lastReportedAt);
+            copy.recentReasons = recentReasons != null ? new ArrayDeque<>(recentReasons) : null;
+            return copy;
+        }
+    }
+}
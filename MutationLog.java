@@ -0,0 +1,651 @@
+// MutationRecord.java
+package com.socio.eventlog;
+
+import com.socio.event.ActivityEvent;
+import lombok.Value;
+
+/**
+ * One entry of the mutation log. The offset is the record's position in the log,
+ * counted in records from the first one ever written.
+ */
+@Value
+public class MutationRecord {
+    long offset;
+    ActivityEvent.Type type;
+    Long actorId;
+    Long recipientId;
+    Long postId;
+    long timestampMillis;
+}
+
+// MutationLogConsumer.java
+package com.socio.eventlog;
+
+/**
+ * A projection fed from the mutation log. Each consumer reads on its own thread at its
+ * own offset, so a slow one never holds back the others or the write path.
+ *
+ * Delivery is at-least-once: after a crash, records since the last saved offset are
+ * delivered again.
+ */
+public interface MutationLogConsumer {
+
+    /**
+     * Stable name; the saved offset is keyed by it
+     */
+    String name();
+
+    void accept(MutationRecord record);
+
+    /**
+     * Whether the consumer's state outlives the process. In-memory projections return
+     * false and are rebuilt from offset 0 on every start.
+     */
+    default boolean isDurable() {
+        return true;
+    }
+
+    /**
+     * Called before records are replayed from an earlier offset
+     */
+    default void rewind(long offset) {
+    }
+}
+
+// MutationLog.java
+package com.socio.eventlog;
+
+import com.socio.event.ActivityEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of every mutation, in memory-mapped segment files under
+ * socio.mutation-log.dir.
+ *
+ * Records are fixed-size, so an offset maps straight to a segment and a position in it.
+ * Each segment holds socio.mutation-log.segment-records records and is named after the
+ * offset of its first one. Records are appended once the mutation's transaction has
+ * committed and reach disk within socio.mutation-log.flush-ms. A record whose CRC does
+ * not match, such as one torn by a crash, ends the log; on startup appending resumes there.
+ *
+ * Full segments are deleted once their newest record is older than
+ * socio.mutation-log.retention-hours and every consumer has read past them, so the
+ * start offset moves forward over time.
+ *
+ * Record layout: written flag, type, actor id, recipient id, post id, timestamp, CRC32.
+ * The type is stored by ordinal, so new {@link ActivityEvent.Type}s go at the end.
+ */
+@Slf4j
+@Component
+public class MutationLog {
+
+    static final int RECORD_BYTES = 40;
+    private static final int CRC_POSITION = 1 + 1 + 8 + 8 + 8 + 8;
+    private static final long NULL_ID = Long.MIN_VALUE;
+    private static final ActivityEvent.Type[] TYPES = ActivityEvent.Type.values();
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private Segment active;
+    // Offset the next record is written at; readers see everything below it
+    private volatile long endOffset;
+
+    @Value("${socio.mutation-log.dir:./data/mutation-log}")
+    private String logDir;
+
+    @Value("${socio.mutation-log.segment-records:1000000}")
+    private int segmentRecords;
+
+    @Value("${socio.mutation-log.retention-hours:168}")
+    private long retentionHours;
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Path dir = directory();
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.log")) {
+            for (Path file : files) {
+                Segment segment = Segment.open(file, segmentRecords);
+                segments.put(segment.baseOffset, segment);
+            }
+        }
+        if (segments.isEmpty()) {
+            active = Segment.create(dir, 0, segmentRecords);
+            segments.put(0L, active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        endOffset = active.baseOffset + active.recover();
+        log.info("Mutation log open at offset {} in {} segments", endOffset, segments.size());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        flush();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivity(ActivityEvent event) {
+        append(event);
+    }
+
+    /**
+     * @return the offset of the new record
+     */
+    public synchronized long append(ActivityEvent event) {
+        long offset = endOffset;
+        if (offset - active.baseOffset == active.capacity) {
+            roll(offset);
+        }
+        active.write((int) (offset - active.baseOffset), event);
+        endOffset = offset + 1;
+        return offset;
+    }
+
+    /**
+     * Up to max records starting at offset; fewer, or none, at the end of the log
+     */
+    public List<MutationRecord> read(long offset, int max) {
+        long end = Math.min(endOffset, offset + max);
+        List<MutationRecord> records = new ArrayList<>((int) Math.max(0, end - offset));
+        while (offset < end) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                throw new IllegalArgumentException("Offset " + offset + " is before the start of the log");
+            }
+            Segment segment = entry.getValue();
+            long segmentEnd = Math.min(end, segment.baseOffset + segment.capacity);
+            for (; offset < segmentEnd; offset++) {
+                records.add(segment.read(offset));
+            }
+        }
+        return records;
+    }
+
+    public long getStartOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Delete the oldest segments that are past retention and lie wholly below keepFrom
+     *
+     * @param keepFrom the oldest offset still needed, i.e. the slowest consumer's
+     * @return the number of segments deleted
+     */
+    public int expire(long keepFrom) {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours);
+        int deleted = 0;
+        while (true) {
+            Segment oldest;
+            synchronized (this) {
+                oldest = segments.firstEntry().getValue();
+                long oldestEnd = oldest.baseOffset + oldest.capacity;
+                if (oldest == active || oldestEnd > keepFrom || oldest.read(oldestEnd - 1).getTimestampMillis() >= cutoff) {
+                    return deleted;
+                }
+                segments.remove(oldest.baseOffset);
+            }
+            // A reader that looked the segment up just before keeps its mapping until it is done
+            oldest.delete();
+            deleted++;
+        }
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    @Scheduled(fixedDelayString = "${socio.mutation-log.flush-ms:1000}")
+    public void flush() {
+        Segment segment;
+        synchronized (this) {
+            segment = active;
+        }
+        // force() only waits for the disk, appends can carry on meanwhile
+        if (segment != null) {
+            segment.buffer.force();
+        }
+    }
+
+    private void roll(long offset) {
+        active.buffer.force();
+        try {
+            active = Segment.create(directory(), offset, segmentRecords);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not roll mutation log at offset " + offset, e);
+        }
+        segments.put(offset, active);
+    }
+
+    private Path directory() {
+        return Paths.get(logDir).toAbsolutePath().normalize();
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long baseOffset;
+        private final int capacity;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final CRC32 crc = new CRC32();
+
+        private Segment(Path file, long baseOffset, int capacity, FileChannel channel) throws IOException {
+            this.file = file;
+            this.baseOffset = baseOffset;
+            this.capacity = capacity;
+            this.channel = channel;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_BYTES);
+        }
+
+        static Segment create(Path dir, long baseOffset, int capacity) throws IOException {
+            Path file = dir.resolve(String.format("%020d.log", baseOffset));
+            return new Segment(file, baseOffset, capacity, FileChannel.open(file,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+
+        static Segment open(Path file, int defaultCapacity) throws IOException {
+            String name = file.getFileName().toString();
+            long baseOffset = Long.parseLong(name.substring(0, name.length() - ".log".length()));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Keep the capacity a segment was written with, even if the setting has changed since
+            int capacity = channel.size() > 0 ? (int) (channel.size() / RECORD_BYTES) : defaultCapacity;
+            return new Segment(file, baseOffset, capacity, channel);
+        }
+
+        /**
+         * Find the first slot without a valid record and clear anything after it
+         *
+         * @return the number of valid records
+         */
+        int recover() {
+            int count = 0;
+            while (count < capacity && isValid(count)) {
+                count++;
+            }
+            for (int i = count * RECORD_BYTES; i < capacity * RECORD_BYTES && buffer.get(i) != 0; i += RECORD_BYTES) {
+                for (int j = 0; j < RECORD_BYTES; j++) {
+                    buffer.put(i + j, (byte) 0);
+                }
+            }
+            return count;
+        }
+
+        // Only called by the single appender
+        void write(int slot, ActivityEvent event) {
+            int at = slot * RECORD_BYTES;
+            buffer.put(at + 1, (byte) event.getType().ordinal());
+            buffer.putLong(at + 2, orNull(event.getActorId()));
+            buffer.putLong(at + 10, orNull(event.getRecipientId()));
+            buffer.putLong(at + 18, orNull(event.getPostId()));
+            buffer.putLong(at + 26, event.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            buffer.put(at, (byte) 1);
+            buffer.putInt(at + CRC_POSITION, checksum(at));
+        }
+
+        MutationRecord read(long offset) {
+            int at = (int) (offset - baseOffset) * RECORD_BYTES;
+            return new MutationRecord(offset,
+                    TYPES[buffer.get(at + 1)],
+                    nullable(buffer.getLong(at + 2)),
+                    nullable(buffer.getLong(at + 10)),
+                    nullable(buffer.getLong(at + 18)),
+                    buffer.getLong(at + 26));
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Could not close mutation log segment {}", baseOffset, e);
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete mutation log segment {}", baseOffset, e);
+            }
+        }
+
+        private boolean isValid(int slot) {
+            int at = slot * RECORD_BYTES;
+            return buffer.get(at) == 1 && buffer.getInt(at + CRC_POSITION) == checksum(at);
+        }
+
+        private int checksum(int at) {
+            crc.reset();
+            for (int i = at; i < at + CRC_POSITION; i++) {
+                crc.update(buffer.get(i));
+            }
+            return (int) crc.getValue();
+        }
+
+        private static long orNull(Long id) {
+            return id != null ? id : NULL_ID;
+        }
+
+        private static Long nullable(long id) {
+            return id != NULL_ID ? id : null;
+        }
+    }
+}
+
+// ProjectionRunner.java
+package com.socio.eventlog;
+
+import com.socio.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds every {@link MutationLogConsumer} bean from the mutation log on a background thread,
+ * saving each consumer's offset under socio.mutation-log.dir/offsets after every batch.
+ * Also expires log segments that every consumer has read.
+ */
+@Slf4j
+@Component
+public class ProjectionRunner {
+
+    private final MutationLog mutationLog;
+    private final List<MutationLogConsumer> consumers;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> offsets = new ConcurrentHashMap<>();
+    // Rewinds requested through the admin API, applied by the consumer's own thread
+    private final Map<String, Long> pendingRewinds = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor executor;
+
+    @Value("${socio.mutation-log.dir:./data/mutation-log}")
+    private String logDir;
+
+    @Value("${socio.mutation-log.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${socio.mutation-log.poll-ms:200}")
+    private long pollMs;
+
+    public ProjectionRunner(MutationLog mutationLog, List<MutationLogConsumer> consumers, MeterRegistry meterRegistry) {
+        this.mutationLog = mutationLog;
+        this.consumers = consumers;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(offsetDir());
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, consumers.size()), runnable -> {
+            Thread thread = new Thread(runnable, "mutation-log-projection-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (MutationLogConsumer consumer : consumers) {
+            long start = consumer.isDurable() ? loadOffset(consumer.name()) : mutationLog.getStartOffset();
+            AtomicLong offset = new AtomicLong(start);
+            offsets.put(consumer.name(), offset);
+            Gauge.builder("socio.mutation-log.lag", offset, o -> mutationLog.getEndOffset() - o.get())
+                    .tag("consumer", consumer.name())
+                    .register(meterRegistry);
+            executor.scheduleWithFixedDelay(() -> poll(consumer), 0, pollMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Replay a consumer from an earlier offset, e.g. 0 to rebuild its projection
+     */
+    public void rewind(String name, long offset) {
+        if (!offsets.containsKey(name)) {
+            throw new ResourceNotFoundException("Unknown consumer: " + name);
+        }
+        if (offset < mutationLog.getStartOffset() || offset > mutationLog.getEndOffset()) {
+            throw new IllegalArgumentException("Offset " + offset + " is outside the log");
+        }
+        pendingRewinds.put(name, offset);
+    }
+
+    @Scheduled(fixedDelayString = "${socio.mutation-log.expire-ms:60000}")
+    public void expire() {
+        long keepFrom = mutationLog.getEndOffset();
+        for (AtomicLong offset : offsets.values()) {
+            keepFrom = Math.min(keepFrom, offset.get());
+        }
+        // An accepted rewind must still find its records
+        for (Long rewindTo : pendingRewinds.values()) {
+            keepFrom = Math.min(keepFrom, rewindTo);
+        }
+        int deleted = mutationLog.expire(keepFrom);
+        if (deleted > 0) {
+            log.info("Expired {} mutation log segments; the log now starts at {}", deleted, mutationLog.getStartOffset());
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("startOffset", mutationLog.getStartOffset());
+        status.put("endOffset", mutationLog.getEndOffset());
+        Map<String, Long> consumerOffsets = new LinkedHashMap<>();
+        offsets.forEach((name, offset) -> consumerOffsets.put(name, offset.get()));
+        status.put("consumers", consumerOffsets);
+        return status;
+    }
+
+    private void poll(MutationLogConsumer consumer) {
+        AtomicLong offset = offsets.get(consumer.name());
+        try {
+            Long rewindTo = pendingRewinds.remove(consumer.name());
+            if (rewindTo != null) {
+                consumer.rewind(rewindTo);
+                offset.set(rewindTo);
+                saveOffset(consumer, rewindTo);
+            }
+            // Only possible if a rewind was accepted as its segment expired
+            long start = mutationLog.getStartOffset();
+            if (offset.get() < start) {
+                log.warn("Projection {} skips from {} to {}; the records between have expired",
+                        consumer.name(), offset.get(), start);
+                offset.set(start);
+            }
+            List<MutationRecord> batch;
+            do {
+                batch = mutationLog.read(offset.get(), batchSize);
+                for (MutationRecord record : batch) {
+                    consumer.accept(record);
+                    offset.set(record.getOffset() + 1);
+                }
+                if (!batch.isEmpty()) {
+                    saveOffset(consumer, offset.get());
+                }
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            // Retried from the failed record on the next poll
+            log.warn("Projection {} failed at offset {}", consumer.name(), offset.get(), e);
+        }
+    }
+
+    private long loadOffset(String name) throws IOException {
+        Path file = offsetDir().resolve(name + ".offset");
+        if (!Files.exists(file)) {
+            return mutationLog.getStartOffset();
+        }
+        return Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+    }
+
+    private void saveOffset(MutationLogConsumer consumer, long offset) throws IOException {
+        if (!consumer.isDurable()) {
+            return;
+        }
+        Path file = offsetDir().resolve(consumer.name() + ".offset");
+        Path tmp = offsetDir().resolve(consumer.name() + ".offset.tmp");
+        Files.write(tmp, Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path offsetDir() {
+        return Paths.get(logDir).toAbsolutePath().normalize().resolve("offsets");
+    }
+}
+
+// EngagementCounters.java
+package com.socio.eventlog;
+
+import com.socio.event.ActivityEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Example projection: running totals per mutation type. Held in memory and rebuilt from
+ * the start of the log on every boot; since old segments expire, the totals cover about
+ * the last socio.mutation-log.retention-hours, not all time.
+ *
+ * Counts only go up, since unlikes and comment deletions are not logged.
+ */
+@Component
+public class EngagementCounters implements MutationLogConsumer {
+
+    private final Map<ActivityEvent.Type, LongAdder> totals = new EnumMap<>(ActivityEvent.Type.class);
+
+    public EngagementCounters() {
+        for (ActivityEvent.Type type : ActivityEvent.Type.values()) {
+            totals.put(type, new LongAdder());
+        }
+    }
+
+    @Override
+    public String name() {
+        return "engagement-counters";
+    }
+
+    @Override
+    public boolean isDurable() {
+        return false;
+    }
+
+    @Override
+    public void accept(MutationRecord record) {
+        totals.get(record.getType()).increment();
+    }
+
+    @Override
+    public void rewind(long offset) {
+        // Counts can't be taken back to an offset, so rebuild from whatever is replayed
+        totals.values().forEach(LongAdder::reset);
+    }
+
+    public Map<ActivityEvent.Type, Long> getTotals() {
+        Map<ActivityEvent.Type, Long> sums = new EnumMap<>(ActivityEvent.Type.class);
+        totals.forEach((type, count) -> sums.put(type, count.sum()));
+        return sums;
+    }
+}
+
+// MutationLogController.java
+package com.socio.controller;
+
+import com.socio.event.ActivityEvent;
+import com.socio.eventlog.EngagementCounters;
+import com.socio.eventlog.ProjectionRunner;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * REST controller for mutation log offsets and projections (admin only)
+ */
+@RestController
+@RequestMapping("/api/admin/mutation-log")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+@Api(tags = "Mutation Log")
+public class MutationLogController {
+
+    private final ProjectionRunner projectionRunner;
+    private final EngagementCounters engagementCounters;
+
+    @GetMapping("/status")
+    @ApiOperation("Get log and consumer offsets")
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(projectionRunner.status());
+    }
+
+    /**
+     * Replay a consumer from the given offset
+     */
+    @PostMapping("/consumers/{name}/rewind")
+    @ApiOperation("Rewind a consumer")
+    public ResponseEntity<Void> rewind(@PathVariable String name, @RequestParam(defaultValue = "0") long offset) {
+        projectionRunner.rewind(name, offset);
+        return ResponseEntity.accepted().build();
+    }
+
+    @GetMapping("/counters")
+    @ApiOperation("Get mutation totals by type")
+    public ResponseEntity<Map<ActivityEvent.Type, Long>> counters() {
+        return ResponseEntity.ok(engagementCounters.getTotals());
+    }
+}
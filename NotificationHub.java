@@ -0,0 +1,412 @@
+// NotificationDto.java
+package com.socio.dto;
+
+import com.socio.event.ActivityEvent;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One entry on a user's notification stream. Repeated activity of the same
+ * kind on the same post is coalesced into a single entry with a count.
+ */
+@Data
+@NoArgsConstructor
+public class NotificationDto {
+    private ActivityEvent.Type type;
+    private Long postId;
+    // The most recent actor; count says how many events were folded in
+    private Long actorId;
+    private int count;
+    private LocalDateTime latestAt;
+
+    public static NotificationDto from(ActivityEvent event) {
+        NotificationDto dto = new NotificationDto();
+        dto.setType(event.getType());
+        dto.setPostId(event.getPostId());
+        dto.setActorId(event.getActorId());
+        dto.setCount(1);
+        dto.setLatestAt(event.getTimestamp());
+        return dto;
+    }
+
+    public void coalesce(ActivityEvent event) {
+        actorId = event.getActorId();
+        count++;
+        latestAt = event.getTimestamp();
+    }
+}
+
+// NotificationHub.java
+package com.socio.notification;
+
+import com.socio.dto.NotificationDto;
+import com.socio.event.ActivityEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process fan-out of {@link ActivityEvent}s to connected users over Server-Sent Events.
+ *
+ * An idle connection costs one SseEmitter and a small buffer: the request is in
+ * servlet async mode, so no thread is held while nothing is happening. Events go
+ * into the subscriber's bounded buffer, where repeats on the same post are coalesced;
+ * when the buffer is full the oldest entry is dropped and the client is told to
+ * resync. A small delivery pool batches buffered events and hands each batch to a
+ * writer thread, waiting at most sendTimeoutMs for it. A client whose write takes
+ * longer is dropped and its connection closed once the write returns, so a stalled
+ * client holds one writer thread and never the delivery pool or the service that
+ * published the event.
+ *
+ * Raise server.tomcat.max-connections if a node should hold more than its default
+ * of 8192 open streams.
+ */
+@Slf4j
+@Component
+public class NotificationHub {
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<Long, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private ExecutorService deliveryExecutor;
+    private ExecutorService writerExecutor;
+    private Counter dropped;
+    private Counter stalled;
+
+    @Value("${socio.notifications.buffer-size:64}")
+    private int bufferSize;
+
+    @Value("${socio.notifications.delivery-threads:4}")
+    private int deliveryThreads;
+
+    @Value("${socio.notifications.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${socio.notifications.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    // Upper bound on writes in progress, which is also how many stalled clients can pin a thread at once
+    @Value("${socio.notifications.max-writers:256}")
+    private int maxWriters;
+
+    public NotificationHub(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Each subscriber has at most one drain task queued, so the queue is bounded by the connection count
+        deliveryExecutor = new ThreadPoolExecutor(deliveryThreads, deliveryThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "notification-delivery-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        AtomicInteger writerCount = new AtomicInteger();
+        writerExecutor = new ThreadPoolExecutor(0, maxWriters, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "notification-writer-" + writerCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        dropped = Counter.builder("socio.notifications.dropped").register(meterRegistry);
+        stalled = Counter.builder("socio.notifications.stalled").register(meterRegistry);
+        Gauge.builder("socio.notifications.connections", connections, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        deliveryExecutor.shutdownNow();
+        writerExecutor.shutdownNow();
+        subscribers.values().forEach(list -> list.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    /**
+     * Open a stream for a user. A user may hold several streams, e.g. one per tab.
+     */
+    public SseEmitter subscribe(Long userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        subscribers.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(subscriber);
+        connections.incrementAndGet();
+
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        // Tell the client it is connected so it can stop polling
+        subscriber.heartbeatDue = true;
+        scheduleDrain(subscriber);
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivity(ActivityEvent event) {
+        if (!event.getType().notifies() || event.getRecipientId() == null || event.getRecipientId().equals(event.getActorId())) {
+            return;
+        }
+        List<Subscriber> targets = subscribers.get(event.getRecipientId());
+        if (targets == null) {
+            return;
+        }
+        for (Subscriber subscriber : targets) {
+            subscriber.offer(event);
+            scheduleDrain(subscriber);
+        }
+    }
+
+    /**
+     * Keep idle connections alive through proxies and find the ones whose client has gone away
+     */
+    @Scheduled(fixedRateString = "${socio.notifications.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (List<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                subscriber.heartbeatDue = true;
+                scheduleDrain(subscriber);
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                deliveryExecutor.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        boolean writable = true;
+        try {
+            Batch batch;
+            while (writable && !(batch = subscriber.take()).isEmpty()) {
+                writable = write(subscriber, batch);
+            }
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // Something may have arrived between the last take() and releasing the flag.
+        // After a failed write the next heartbeat retries instead, so a saturated writer pool is not spun on.
+        if (writable && subscriber.hasPending()) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    /**
+     * Write one batch on a writer thread, waiting at most sendTimeoutMs
+     *
+     * @return whether the subscriber can take more
+     */
+    private boolean write(Subscriber subscriber, Batch batch) {
+        Future<?> write;
+        try {
+            write = writerExecutor.submit(() -> send(subscriber, batch));
+        } catch (RejectedExecutionException e) {
+            // Every writer is busy; lose this batch and have the client resync
+            subscriber.markOverflowed();
+            dropped.increment();
+            return false;
+        }
+        try {
+            write.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            // The write goes on until the socket gives up; send() closes the emitter when it returns
+            stalled.increment();
+            remove(subscriber);
+            write.cancel(true);
+            return false;
+        } catch (ExecutionException e) {
+            // Client went away, or the emitter already completed or timed out
+            remove(subscriber);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Void send(Subscriber subscriber, Batch batch) throws IOException {
+        try {
+            if (batch.resync) {
+                subscriber.emitter.send(SseEmitter.event().name("resync").data("{}", MediaType.APPLICATION_JSON));
+            }
+            for (NotificationDto notification : batch.notifications) {
+                subscriber.emitter.send(SseEmitter.event().name("activity").data(notification, MediaType.APPLICATION_JSON));
+            }
+            if (batch.heartbeat && batch.notifications.isEmpty() && !batch.resync) {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+        } catch (IOException e) {
+            subscriber.emitter.completeWithError(e);
+            throw e;
+        }
+        if (subscriber.closed.get()) {
+            // Dropped as stalled while this write was in progress
+            subscriber.emitter.complete();
+        }
+        return null;
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return;
+        }
+        connections.decrementAndGet();
+        subscribers.computeIfPresent(subscriber.userId, (id, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private static String coalesceKey(ActivityEvent event) {
+        return event.getType() + ":" + (event.getPostId() != null ? event.getPostId() : "");
+    }
+
+    private final class Subscriber {
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Insertion-ordered so the oldest entry is dropped first on overflow
+        private final LinkedHashMap<String, NotificationDto> buffer = new LinkedHashMap<>();
+        private boolean overflowed;
+        private volatile boolean heartbeatDue;
+
+        private Subscriber(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        private synchronized void offer(ActivityEvent event) {
+            String key = coalesceKey(event);
+            NotificationDto existing = buffer.get(key);
+            if (existing != null) {
+                existing.coalesce(event);
+                return;
+            }
+            if (buffer.size() >= bufferSize) {
+                Iterator<Map.Entry<String, NotificationDto>> oldest = buffer.entrySet().iterator();
+                oldest.next();
+                oldest.remove();
+                overflowed = true;
+                dropped.increment();
+            }
+            buffer.put(key, NotificationDto.from(event));
+        }
+
+        private synchronized Batch take() {
+            List<NotificationDto> notifications = buffer.isEmpty()
+                    ? Collections.emptyList()
+                    : new ArrayList<>(buffer.values());
+            buffer.clear();
+            Batch batch = new Batch(notifications, overflowed, heartbeatDue);
+            overflowed = false;
+            heartbeatDue = false;
+            return batch;
+        }
+
+        private synchronized void markOverflowed() {
+            overflowed = true;
+        }
+
+        private synchronized boolean hasPending() {
+            return !closed.get() && (!buffer.isEmpty() || overflowed || heartbeatDue);
+        }
+    }
+
+    private static final class Batch {
+        private final List<NotificationDto> notifications;
+        private final boolean resync;
+        private final boolean heartbeat;
+
+        private Batch(List<NotificationDto> notifications, boolean resync, boolean heartbeat) {
+            this.notifications = notifications;
+            this.resync = resync;
+            this.heartbeat = heartbeat;
+        }
+
+        private boolean isEmpty() {
+            return notifications.isEmpty() && !resync && !heartbeat;
+        }
+    }
+}
+
+// NotificationController.java
+package com.socio.controller;
+
+import com.socio.notification.NotificationHub;
+import com.socio.security.CurrentUser;
+import com.socio.security.UserPrincipal;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * REST controller for live notifications
+ */
+@RestController
+@RequestMapping("/api/notifications")
+@RequiredArgsConstructor
+@Api(tags = "Notifications")
+public class NotificationController {
+
+    private final NotificationHub notificationHub;
+
+    /**
+     * Open a Server-Sent Events stream of likes, comments, follows and shares for the current user
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation("Stream notifications for current user")
+    public SseEmitter stream(@CurrentUser UserPrincipal currentUser) {
+        return notificationHub.subscribe(currentUser.getId());
+    }
+}
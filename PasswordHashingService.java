@@ -0,0 +1,210 @@
+// PasswordHashingService.java
+package com.socio.security;
+
+import com.socio.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BCrypt on a dedicated, core-sized pool instead of on request threads.
+ *
+ * The pool has a short queue and rejects new work when it is full, so a login
+ * storm gets fast 429s instead of pinning every servlet thread on hashing. Bulk
+ * work shares a smaller quota of the pool, so an import never takes every thread
+ * away from logins.
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${socio.security.hashing.threads:0}")
+    private int threads;
+
+    @Value("${socio.security.hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${socio.security.hashing.timeout-ms:5000}")
+    private long timeoutMs;
+
+    // Threads all bulk callers together may use; 0 means a quarter of the pool
+    @Value("${socio.security.hashing.bulk-threads:0}")
+    private int bulkThreads;
+
+    private ThreadPoolExecutor executor;
+    private Timer encodeTimer;
+    private Timer matchTimer;
+    private Counter rejections;
+    private Semaphore bulkPermits;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder, MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        bulkPermits = new Semaphore(Math.min(poolSize, bulkThreads > 0 ? bulkThreads : Math.max(1, poolSize / 4)));
+
+        encodeTimer = Timer.builder("socio.password.hash")
+                .tag("operation", "encode")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        matchTimer = Timer.builder("socio.password.hash")
+                .tag("operation", "matches")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        rejections = Counter.builder("socio.password.hash.rejected").register(meterRegistry);
+        Gauge.builder("socio.password.hash.queue.depth", executor, pool -> pool.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("socio.password.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public String encode(String rawPassword) {
+        return await(submit(() -> encodeTimer.recordCallable(() -> passwordEncoder.encode(rawPassword))));
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return await(submit(() -> matchTimer.recordCallable(() -> passwordEncoder.matches(rawPassword, encodedPassword))));
+    }
+
+    /**
+     * Whether a stored hash was made with a weaker work factor than the configured one
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Re-hash opportunistically, e.g. after a successful login
+     *
+     * @return the new hash, or null if the pool is busy
+     */
+    public String tryEncode(String rawPassword) {
+        try {
+            return encode(rawPassword);
+        } catch (TooManyRequestsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Hash many passwords within the bulk quota. Each hash holds a permit from before it is
+     * queued until its pool thread is done with it, so concurrent bulk callers together never
+     * keep more than the quota of threads busy. Cancelling does not stop a hash that is already
+     * running, since BCrypt ignores interrupts, so its permit stays taken until it returns.
+     * Waits for a permit as long as a single hash may take.
+     */
+    public List<String> encodeAll(List<String> rawPasswords) {
+        List<Future<String>> inFlight = new ArrayList<>(rawPasswords.size());
+        try {
+            for (String raw : rawPasswords) {
+                acquireBulkPermit();
+                FutureTask<String> task = new FutureTask<String>(
+                        () -> encodeTimer.recordCallable(() -> passwordEncoder.encode(raw))) {
+                    @Override
+                    public void run() {
+                        // Also reached by a task cancelled while queued, which returns at once
+                        try {
+                            super.run();
+                        } finally {
+                            bulkPermits.release();
+                        }
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    bulkPermits.release();
+                    rejections.increment();
+                    throw new TooManyRequestsException("Too many authentication requests, please retry shortly");
+                }
+                inFlight.add(task);
+            }
+            List<String> encoded = new ArrayList<>(rawPasswords.size());
+            for (Future<String> future : inFlight) {
+                encoded.add(await(future));
+            }
+            return encoded;
+        } catch (RuntimeException e) {
+            inFlight.forEach(future -> future.cancel(true));
+            throw e;
+        }
+    }
+
+    private void acquireBulkPermit() {
+        try {
+            if (!bulkPermits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                rejections.increment();
+                throw new TooManyRequestsException("Too many authentication requests, please retry shortly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        }
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new TooManyRequestsException("Too many authentication requests, please retry shortly");
+        }
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejections.increment();
+            throw new TooManyRequestsException("Too many authentication requests, please retry shortly");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+}
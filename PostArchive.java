@@ -0,0 +1,1120 @@
+// PostSegment.java
+package com.socio.archive;
+
+import com.socio.entity.Post;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * One immutable, compressed file of archived posts from a single month and shard.
+ *
+ * Layout:
+ *   blocks      each a deflated run of up to blockSize posts, ids ascending
+ *   index       per block: first id, file offset, compressed length
+ *   user index  per post: user id, post id; by user, then newest id first
+ *   trailer     index offset, user index offset, min id, max id, post count, block count, magic
+ *
+ * Only the sparse index is held in memory; a lookup binary-searches it and inflates
+ * one block. A user's posts are found by binary-searching the user index on disk.
+ * Deleted posts are recorded in a tombstone file next to the segment, which other
+ * nodes sharing the directory pick up through refreshTombstones.
+ */
+public class PostSegment implements Closeable {
+
+    static final String SUFFIX = ".seg";
+    static final String TOMBSTONE_SUFFIX = ".tomb";
+
+    private static final int MAGIC = 0x53505348;
+    private static final int TRAILER_BYTES = 8 + 8 + 8 + 8 + 4 + 4 + 4;
+    private static final int INDEX_ENTRY_BYTES = 8 + 8 + 4;
+    private static final int USER_ENTRY_BYTES = 8 + 8;
+    // User index entries read per I/O once the binary search has found a user's first post
+    private static final int USER_PAGE = 256;
+
+    private final Path path;
+    private final int shard;
+    private final FileChannel channel;
+    private final FileChannel tombstoneChannel;
+    private final long[] firstIds;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final long userIndexOffset;
+    private final long minId;
+    private final long maxId;
+    private final int postCount;
+    private final Set<Long> tombstones = Collections.synchronizedSet(new HashSet<>());
+    // Bytes of the tombstone file already read into tombstones
+    private long tombstonesRead;
+
+    private PostSegment(Path path, int shard, FileChannel channel, FileChannel tombstoneChannel,
+                        long[] firstIds, long[] offsets, int[] lengths, long userIndexOffset,
+                        long minId, long maxId, int postCount) {
+        this.path = path;
+        this.shard = shard;
+        this.channel = channel;
+        this.tombstoneChannel = tombstoneChannel;
+        this.firstIds = firstIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.userIndexOffset = userIndexOffset;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.postCount = postCount;
+    }
+
+    /**
+     * Name files so that a directory listing sorts by shard, month and run
+     */
+    static String fileName(int shard, String month, long run) {
+        return String.format("posts-s%03d-%s-%d%s", shard, month, run, SUFFIX);
+    }
+
+    static int shardOf(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring("posts-s".length(), "posts-s".length() + 3));
+    }
+
+    public static PostSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = readFully(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            long userIndexOffset = trailer.getLong();
+            long minId = trailer.getLong();
+            long maxId = trailer.getLong();
+            int postCount = trailer.getInt();
+            int blockCount = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException("Not a post segment: " + path);
+            }
+
+            ByteBuffer index = readFully(channel, indexOffset, blockCount * INDEX_ENTRY_BYTES);
+            long[] firstIds = new long[blockCount];
+            long[] offsets = new long[blockCount];
+            int[] lengths = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                firstIds[i] = index.getLong();
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+            }
+
+            Path tombstonePath = tombstonePath(path);
+            // Append-only, so nodes sharing the file never overwrite each other's records
+            FileChannel tombstoneChannel = FileChannel.open(tombstonePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            PostSegment segment = new PostSegment(path, shardOf(path), channel, tombstoneChannel,
+                    firstIds, offsets, lengths, userIndexOffset, minId, maxId, postCount);
+            try {
+                segment.refreshTombstones();
+            } catch (IOException | RuntimeException e) {
+                tombstoneChannel.close();
+                throw e;
+            }
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read tombstones appended since the last call, including those written by other nodes
+     */
+    public synchronized void refreshTombstones() throws IOException {
+        try (FileChannel reader = FileChannel.open(tombstonePath(path), StandardOpenOption.READ)) {
+            // A torn write from another node leaves a partial id at the end; it is read once complete
+            long complete = reader.size() / 8 * 8;
+            if (complete <= tombstonesRead) {
+                return;
+            }
+            ByteBuffer deleted = readFully(reader, tombstonesRead, (int) (complete - tombstonesRead));
+            while (deleted.remaining() >= 8) {
+                tombstones.add(deleted.getLong());
+            }
+            tombstonesRead = complete;
+        }
+    }
+
+    public boolean covers(long id) {
+        return id >= minId && id <= maxId;
+    }
+
+    /**
+     * @return the post, or null if it is not in this segment or has been deleted
+     */
+    public Post find(long id, BlockCache cache) throws IOException {
+        if (!covers(id) || tombstones.contains(id)) {
+            return null;
+        }
+        int block = Arrays.binarySearch(firstIds, id);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        if (block < 0) {
+            return null;
+        }
+
+        int found = block;
+        byte[] records;
+        try {
+            records = cache.get(path, found, () -> readBlock(found));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(records));
+        try {
+            while (true) {
+                long recordId = in.readLong();
+                if (recordId == id) {
+                    return readPost(recordId, in);
+                }
+                if (recordId > id) {
+                    return null;
+                }
+                skipPost(in);
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ids of a user's posts below beforeId that are not deleted, newest first
+     */
+    public List<Long> userPostIds(long userId, long beforeId, int limit) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        if (beforeId <= minId || limit <= 0) {
+            return ids;
+        }
+        // First entry at or past (userId, beforeId) in user, then id-descending, order
+        int low = 0;
+        int high = postCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            ByteBuffer entry = readFully(channel, userIndexOffset + (long) mid * USER_ENTRY_BYTES, USER_ENTRY_BYTES);
+            long entryUserId = entry.getLong();
+            long entryId = entry.getLong();
+            if (entryUserId > userId || (entryUserId == userId && entryId < beforeId)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        for (int position = low; position < postCount; position += USER_PAGE) {
+            int count = Math.min(USER_PAGE, postCount - position);
+            ByteBuffer page = readFully(channel, userIndexOffset + (long) position * USER_ENTRY_BYTES,
+                    count * USER_ENTRY_BYTES);
+            for (int i = 0; i < count; i++) {
+                long entryUserId = page.getLong();
+                long entryId = page.getLong();
+                if (entryUserId != userId) {
+                    return ids;
+                }
+                if (!tombstones.contains(entryId)) {
+                    ids.add(entryId);
+                    if (ids.size() == limit) {
+                        return ids;
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Ids stored in one block, ascending, deleted ones included
+     */
+    public List<Long> blockIds(int block) throws IOException {
+        byte[] records;
+        try {
+            records = readBlock(block);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(records));
+        List<Long> ids = new ArrayList<>();
+        while (in.available() > 0) {
+            ids.add(in.readLong());
+            skipPost(in);
+        }
+        return ids;
+    }
+
+    /**
+     * Record a deletion. Durable before it returns.
+     *
+     * @return false if the post is not in this segment or was already deleted
+     */
+    public synchronized boolean tombstone(long id) throws IOException {
+        if (!covers(id) || tombstones.contains(id)) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8).putLong(id);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            tombstoneChannel.write(buffer);
+        }
+        tombstoneChannel.force(false);
+        tombstones.add(id);
+        return true;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public long getMinId() {
+        return minId;
+    }
+
+    public long getMaxId() {
+        return maxId;
+    }
+
+    public int getPostCount() {
+        return postCount;
+    }
+
+    public int getBlockCount() {
+        return firstIds.length;
+    }
+
+    public long getSizeBytes() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            tombstoneChannel.close();
+        }
+    }
+
+    static Path tombstonePath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SUFFIX.length()) + TOMBSTONE_SUFFIX);
+    }
+
+    // Unchecked, so it can load blocks through BlockCache
+    private byte[] readBlock(int block) {
+        try {
+            return inflate(readFully(channel, offsets[block], lengths[block]));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] inflate(ByteBuffer compressed) {
+        try (InflaterInputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(compressed.array(), 0, compressed.limit()))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt segment block", e);
+        }
+    }
+
+    private static void writePost(DataOutputStream out, Post post) throws IOException {
+        out.writeLong(post.getId());
+        out.writeLong(post.getUserId());
+        out.writeLong(post.getCreatedAt().toInstant(ZoneOffset.UTC).toEpochMilli());
+        out.writeBoolean(post.isShared());
+        writeNullableLong(out, post.getOriginalPostId());
+        writeNullableLong(out, post.getOriginalUserId());
+        writeNullableString(out, post.getContent());
+        writeNullableString(out, post.getFileUrl());
+        writeNullableString(out, post.getFileType());
+        writeNullableString(out, post.getBlobHash());
+    }
+
+    private static Post readPost(long id, DataInputStream in) throws IOException {
+        Post post = new Post();
+        post.setId(id);
+        post.setUserId(in.readLong());
+        long createdAt = in.readLong();
+        post.setCreatedAt(LocalDateTime.ofEpochSecond(Math.floorDiv(createdAt, 1000L),
+                (int) Math.floorMod(createdAt, 1000L) * 1_000_000, ZoneOffset.UTC));
+        post.setIsShared(in.readBoolean());
+        post.setOriginalPostId(readNullableLong(in));
+        post.setOriginalUserId(readNullableLong(in));
+        post.setContent(readNullableString(in));
+        post.setFileUrl(readNullableString(in));
+        post.setFileType(readNullableString(in));
+        post.setBlobHash(readNullableString(in));
+        return post;
+    }
+
+    private static void skipPost(DataInputStream in) throws IOException {
+        in.skipBytes(8 + 8 + 1);
+        readNullableLong(in);
+        readNullableLong(in);
+        for (int i = 0; i < 4; i++) {
+            int length = in.readInt();
+            if (length > 0) {
+                in.skipBytes(length);
+            }
+        }
+    }
+
+    private static void writeNullableLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readNullableLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    // Length-prefixed UTF-8; writeUTF would cap content at 64KB
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Streams posts into a new segment. Posts must arrive in ascending id order.
+     */
+    public static class Writer implements Closeable {
+
+        private final Path target;
+        private final Path tmp;
+        private final FileChannel out;
+        private final int blockSize;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(64 * 1024);
+        private DataOutputStream blockData = new DataOutputStream(block);
+        private int postsInBlock;
+        private long blockFirstId;
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexData = new DataOutputStream(index);
+        // Author and id of every post so far, for the user index
+        private long[] userIds = new long[1024];
+        private long[] postIds = new long[1024];
+        private int blockCount;
+        private long minId = Long.MAX_VALUE;
+        private long maxId = Long.MIN_VALUE;
+        private int postCount;
+        private boolean finished;
+
+        public Writer(Path target, int blockSize) throws IOException {
+            this.target = target;
+            this.tmp = target.resolveSibling(target.getFileName() + ".part");
+            this.out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.blockSize = blockSize;
+        }
+
+        public void append(Post post) throws IOException {
+            if (post.getId() <= maxId && postCount > 0) {
+                throw new IllegalArgumentException("Posts must be appended in ascending id order");
+            }
+            if (postsInBlock == 0) {
+                blockFirstId = post.getId();
+            }
+            writePost(blockData, post);
+            if (postCount == postIds.length) {
+                userIds = Arrays.copyOf(userIds, postCount * 2);
+                postIds = Arrays.copyOf(postIds, postCount * 2);
+            }
+            userIds[postCount] = post.getUserId();
+            postIds[postCount] = post.getId();
+            postsInBlock++;
+            postCount++;
+            minId = Math.min(minId, post.getId());
+            maxId = post.getId();
+            if (postsInBlock == blockSize) {
+                flushBlock();
+            }
+        }
+
+        public int getPostCount() {
+            return postCount;
+        }
+
+        /**
+         * Write the indexes, fsync and move the segment into place
+         */
+        public Path finish() throws IOException {
+            flushBlock();
+            long indexOffset = out.position();
+            write(ByteBuffer.wrap(index.toByteArray()));
+            long userIndexOffset = out.position();
+            writeUserIndex();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            trailer.putLong(indexOffset).putLong(userIndexOffset).putLong(minId).putLong(maxId)
+                    .putInt(postCount).putInt(blockCount).putInt(MAGIC);
+            trailer.flip();
+            write(trailer);
+            out.force(true);
+            out.close();
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return target;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (postsInBlock == 0) {
+                return;
+            }
+            blockData.flush();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(block.size() / 3 + 64);
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DeflaterOutputStream deflating = new DeflaterOutputStream(compressed, deflater)) {
+                block.writeTo(deflating);
+            } finally {
+                deflater.end();
+            }
+
+            indexData.writeLong(blockFirstId);
+            indexData.writeLong(out.position());
+            indexData.writeInt(compressed.size());
+            write(ByteBuffer.wrap(compressed.toByteArray()));
+
+            blockCount++;
+            block.reset();
+            blockData = new DataOutputStream(block);
+            postsInBlock = 0;
+        }
+
+        /**
+         * Counting sort by user on primitive arrays; a month of posts can run to millions
+         */
+        private void writeUserIndex() throws IOException {
+            long[] users = Arrays.copyOf(userIds, postCount);
+            Arrays.sort(users);
+            int distinct = 0;
+            for (int i = 0; i < postCount; i++) {
+                if (i == 0 || users[i] != users[i - 1]) {
+                    users[distinct++] = users[i];
+                }
+            }
+            int[] starts = new int[distinct];
+            for (int i = 0; i < postCount; i++) {
+                starts[Arrays.binarySearch(users, 0, distinct, userIds[i])]++;
+            }
+            for (int user = 1; user < distinct; user++) {
+                starts[user] += starts[user - 1];
+            }
+            // Posts arrived in ascending id order, so filling each user's run from its end
+            // leaves it newest first; afterwards starts holds where each run begins
+            long[] sorted = new long[postCount];
+            for (int i = 0; i < postCount; i++) {
+                sorted[--starts[Arrays.binarySearch(users, 0, distinct, userIds[i])]] = postIds[i];
+            }
+
+            ByteBuffer page = ByteBuffer.allocate(USER_PAGE * USER_ENTRY_BYTES);
+            for (int user = 0; user < distinct; user++) {
+                int end = user + 1 < distinct ? starts[user + 1] : postCount;
+                for (int position = starts[user]; position < end; position++) {
+                    page.putLong(users[user]).putLong(sorted[position]);
+                    if (!page.hasRemaining()) {
+                        page.flip();
+                        write(page);
+                        page.clear();
+                    }
+                }
+            }
+            page.flip();
+            write(page);
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+}
+
+// BlockCache.java
+package com.socio.archive;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Recently inflated segment blocks. Holds bytes rather than posts, since callers
+ * are free to modify the entities they get back.
+ */
+public class BlockCache {
+
+    private final LinkedHashMap<String, byte[]> blocks;
+
+    public BlockCache(int maxBlocks) {
+        this.blocks = new LinkedHashMap<>(maxBlocks * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+
+    public byte[] get(Path segment, int block, Supplier<byte[]> load) {
+        String key = segment.getFileName() + "#" + block;
+        synchronized (this) {
+            byte[] cached = blocks.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Inflate outside the lock; a concurrent miss just inflates the block twice
+        byte[] loaded = load.get();
+        synchronized (this) {
+            blocks.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidate(Path segment) {
+        String prefix = segment.getFileName() + "#";
+        blocks.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+}
+
+// PostArchive.java
+package com.socio.archive;
+
+import com.socio.entity.Post;
+import com.socio.exception.FileStorageException;
+import com.socio.sharding.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Read side of the cold post archive: every segment in socio.archive.dir, searched by id.
+ *
+ * The archive answers lookups by id and a user's own post listing. Feeds and other
+ * listings read the hot table, so archived posts drop out of them and stay reachable
+ * through profiles, links, shares and notifications. Archived posts are read-only.
+ *
+ * Nodes sharing the directory rescan it every socio.archive.refresh-ms for segments
+ * and tombstones written elsewhere. PostArchiver waits out two refreshes before
+ * deleting archived rows, so every node has a segment open before its posts leave
+ * the hot table.
+ */
+@Slf4j
+@Component
+public class PostArchive {
+
+    private final ShardRouter shardRouter;
+    private final List<PostSegment> segments = new CopyOnWriteArrayList<>();
+    private BlockCache blockCache;
+
+    @Value("${socio.archive.dir:./data/archive}")
+    private String archiveDir;
+
+    @Value("${socio.archive.block-cache-size:256}")
+    private int blockCacheSize;
+
+    @Value("${socio.archive.refresh-ms:60000}")
+    private long refreshMs;
+
+    public PostArchive(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        blockCache = new BlockCache(blockCacheSize);
+        Files.createDirectories(directory());
+        openNewSegments();
+        log.info("Opened {} archived post segments", segments.size());
+    }
+
+    /**
+     * Open segments and read tombstones that other nodes have written since the last refresh
+     */
+    @Scheduled(fixedDelayString = "${socio.archive.refresh-ms:60000}", initialDelayString = "${socio.archive.refresh-ms:60000}")
+    public synchronized void refresh() {
+        try {
+            int opened = openNewSegments();
+            if (opened > 0) {
+                log.info("Opened {} new archived post segments", opened);
+            }
+        } catch (IOException e) {
+            log.warn("Could not rescan the post archive", e);
+        }
+        for (PostSegment segment : segments) {
+            try {
+                segment.refreshTombstones();
+            } catch (IOException e) {
+                log.warn("Could not read tombstones of segment {}", segment.getPath(), e);
+            }
+        }
+    }
+
+    public long getRefreshMs() {
+        return refreshMs;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (PostSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Could not close segment {}", segment.getPath(), e);
+            }
+        }
+    }
+
+    public Path directory() {
+        return Paths.get(archiveDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Make a newly written segment visible to lookups
+     */
+    public synchronized PostSegment install(Path file) throws IOException {
+        // A refresh may have opened it already, as soon as it was moved into place
+        for (PostSegment segment : segments) {
+            if (segment.getPath().equals(file)) {
+                return segment;
+            }
+        }
+        PostSegment segment = PostSegment.open(file);
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Whether any segment's id range covers this id; cheap, no I/O
+     */
+    public boolean mayContain(long id) {
+        for (PostSegment segment : segments) {
+            if (segment.covers(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Optional<Post> find(long id) {
+        for (PostSegment segment : candidates(id)) {
+            try {
+                Post post = segment.find(id, blockCache);
+                if (post != null) {
+                    return Optional.of(post);
+                }
+            } catch (IOException e) {
+                throw new FileStorageException("Could not read archived post " + id + ": " + e.getMessage());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public List<Post> findAll(Collection<Long> ids) {
+        List<Post> found = new ArrayList<>();
+        for (Long id : ids) {
+            find(id).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    /**
+     * A user's archived posts with ids below beforeId, newest first
+     */
+    public List<Post> findByUserId(long userId, long beforeId, int limit) {
+        // Posts are archived from their author's shard
+        Integer shard = shardRouter.isSharded() ? shardRouter.shardForUser(userId) : null;
+        TreeSet<Long> ids = new TreeSet<>(Comparator.reverseOrder());
+        for (PostSegment segment : segments) {
+            if (segment.getMinId() < beforeId && (shard == null || segment.getShard() == shard)) {
+                try {
+                    ids.addAll(segment.userPostIds(userId, beforeId, limit));
+                } catch (IOException e) {
+                    throw new FileStorageException("Could not read archived posts of user " + userId + ": " + e.getMessage());
+                }
+            }
+        }
+        List<Post> posts = new ArrayList<>();
+        for (Long id : ids) {
+            if (posts.size() == limit) {
+                break;
+            }
+            find(id).ifPresent(posts::add);
+        }
+        return posts;
+    }
+
+    /**
+     * Delete an archived post
+     *
+     * @return true if the post was archived and is now deleted
+     */
+    public boolean delete(long id) {
+        List<PostSegment> candidates = candidates(id);
+        if (candidates.isEmpty()) {
+            // Another node may have archived it since the last refresh
+            refresh();
+            candidates = candidates(id);
+        }
+        boolean deleted = false;
+        // A post can be in two segments if a compaction run was interrupted after writing
+        for (PostSegment segment : candidates) {
+            try {
+                deleted |= segment.tombstone(id);
+            } catch (IOException e) {
+                throw new FileStorageException("Could not delete archived post " + id + ": " + e.getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        long bytes = 0;
+        long posts = 0;
+        for (PostSegment segment : segments) {
+            posts += segment.getPostCount();
+            try {
+                bytes += segment.getSizeBytes();
+            } catch (IOException ignored) {
+                // Counted as zero
+            }
+        }
+        stats.put("segments", segments.size());
+        stats.put("posts", posts);
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    private int openNewSegments() throws IOException {
+        Set<Path> known = segments.stream().map(PostSegment::getPath).collect(Collectors.toSet());
+        int opened = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory(), "*" + PostSegment.SUFFIX)) {
+            for (Path file : files) {
+                if (!known.contains(file)) {
+                    segments.add(PostSegment.open(file));
+                    opened++;
+                }
+            }
+        }
+        return opened;
+    }
+
+    private List<PostSegment> candidates(long id) {
+        // Sharded ids name their shard, so only that shard's segments can hold them
+        Integer shard = shardRouter.isSharded() ? shardRouter.shardForPost(id) : null;
+        List<PostSegment> candidates = new ArrayList<>(2);
+        for (PostSegment segment : segments) {
+            if (segment.covers(id) && (shard == null || segment.getShard() == shard)) {
+                candidates.add(segment);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(PostSegment::getMinId));
+        return candidates;
+    }
+}
+
+// PostArchiver.java
+package com.socio.archive;
+
+import com.socio.entity.Post;
+import com.socio.repository.PostRepository;
+import com.socio.sharding.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Nightly job that moves whole months of posts older than socio.archive.hot-days out of
+ * the posts table into archive segments, one per month and shard.
+ *
+ * Every cold month is first written to a segment and installed. The run then waits until
+ * every node sharing the directory has refreshed, and only then deletes the segments'
+ * rows from the hot table, so a post is never missing from both. A run interrupted
+ * before the deletes leaves the rows in place and the next run archives them again into
+ * new segments. A file lock in the archive directory keeps nodes sharing it from
+ * compacting at the same time. Runs happen on a thread of their own, so the wait does
+ * not hold up the shared scheduler thread; a run still going when the next is due skips it.
+ *
+ * Rows are deleted by walking each segment, with the chunk's rows locked. A post the
+ * segment holds that is gone from the table was deleted after it was written, and is
+ * tombstoned so the archive does not bring it back.
+ *
+ * Likes, comments and reports of archived posts stay where they are; their foreign keys
+ * to posts must be dropped before enabling this.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "socio.archive.enabled", havingValue = "true")
+public class PostArchiver {
+
+    private final PostRepository postRepository;
+    private final PostArchive postArchive;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${socio.archive.hot-days:30}")
+    private int hotDays;
+
+    @Value("${socio.archive.block-size:256}")
+    private int blockSize;
+
+    @Value("${socio.archive.chunk-size:1000}")
+    private int chunkSize;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "post-archiver");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> log.info("Previous archive run is still going, skipping"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(cron = "${socio.archive.cron:0 30 3 * * *}")
+    public void scheduleArchive() {
+        executor.execute(() -> {
+            try {
+                archiveColdMonths();
+            } catch (IOException | RuntimeException e) {
+                log.error("Archiving posts failed; rows not yet deleted stay in the hot table", e);
+            }
+        });
+    }
+
+    private void archiveColdMonths() throws IOException {
+        Path dir = postArchive.directory();
+        Files.createDirectories(dir);
+        try (FileChannel lockFile = FileChannel.open(dir.resolve(".compaction.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockFile.tryLock()) {
+            if (lock == null) {
+                log.info("Another node is archiving posts, skipping");
+                return;
+            }
+            // Months that ended before the cutoff are cold
+            YearMonth lastColdMonth = YearMonth.from(LocalDate.now().minusDays(hotDays)).minusMonths(1);
+            List<PostSegment> written = new ArrayList<>();
+            for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+                written.addAll(writeShard(shard, lastColdMonth));
+            }
+            if (written.isEmpty()) {
+                return;
+            }
+
+            try {
+                Thread.sleep(postArchive.getRefreshMs() * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.info("Interrupted before deleting archived posts; the next run archives them again");
+                return;
+            }
+            int archived = 0;
+            for (PostSegment segment : written) {
+                archived += removeArchived(segment);
+            }
+            log.info("Archived {} posts up to {}", archived, lastColdMonth);
+        }
+    }
+
+    private List<PostSegment> writeShard(int shard, YearMonth lastColdMonth) throws IOException {
+        LocalDateTime oldest = shardRouter.onShard(shard, postRepository::findOldestCreatedAt);
+        List<PostSegment> written = new ArrayList<>();
+        if (oldest == null) {
+            return written;
+        }
+        for (YearMonth month = YearMonth.from(oldest); !month.isAfter(lastColdMonth); month = month.plusMonths(1)) {
+            PostSegment segment = writeMonth(shard, month);
+            if (segment != null) {
+                written.add(segment);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return the installed segment, or null if the month has no posts left
+     */
+    private PostSegment writeMonth(int shard, YearMonth month) throws IOException {
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        Path target = postArchive.directory()
+                .resolve(PostSegment.fileName(shard, month.toString(), System.currentTimeMillis()));
+
+        Path written;
+        try (PostSegment.Writer writer = new PostSegment.Writer(target, blockSize)) {
+            long afterId = Long.MIN_VALUE;
+            while (true) {
+                long after = afterId;
+                List<Post> chunk = shardRouter.onShard(shard,
+                        () -> postRepository.findChunkCreatedBetween(from, to, after, PageRequest.of(0, chunkSize)));
+                for (Post post : chunk) {
+                    writer.append(post);
+                }
+                if (chunk.size() < chunkSize) {
+                    break;
+                }
+                afterId = chunk.get(chunk.size() - 1).getId();
+            }
+            if (writer.getPostCount() == 0) {
+                return null;
+            }
+            written = writer.finish();
+            log.info("Wrote {} posts from {} on shard {} into {}", writer.getPostCount(), month, shard,
+                    written.getFileName());
+        }
+        return postArchive.install(written);
+    }
+
+    /**
+     * Delete a segment's posts from the hot table, a chunk of its blocks at a time
+     */
+    private int removeArchived(PostSegment segment) throws IOException {
+        int removed = 0;
+        List<Long> ids = new ArrayList<>(chunkSize);
+        for (int block = 0; block < segment.getBlockCount(); block++) {
+            ids.addAll(segment.blockIds(block));
+            if (ids.size() >= chunkSize || block == segment.getBlockCount() - 1) {
+                removed += removeChunk(segment.getShard(), ids);
+                ids = new ArrayList<>(chunkSize);
+            }
+        }
+        return removed;
+    }
+
+    private int removeChunk(int shard, List<Long> ids) {
+        // onShard runs without a transaction when unsharded, and the row locks need one
+        Integer removed = shardRouter.onShard(shard, () -> transactionTemplate.execute(status -> {
+            // A concurrent delete of one of these posts waits for this transaction, then finds it archived
+            Set<Long> hot = postRepository.lockAllById(ids).stream()
+                    .map(Post::getId)
+                    .collect(Collectors.toSet());
+            for (Long id : ids) {
+                if (!hot.contains(id)) {
+                    postArchive.delete(id);
+                }
+            }
+            if (!hot.isEmpty()) {
+                postRepository.deleteAllByIdInBatch(hot);
+            }
+            return hot.size();
+        }));
+        return removed != null ? removed : 0;
+    }
+}
@@ -0,0 +1,270 @@
+// PostSearchIndex.java
+package com.socio.search;
+
+import com.socio.entity.Post;
+import com.socio.exception.SearchIndexException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Embedded Lucene index over post content.
+ *
+ * Writes are applied by PostServiceImpl after commit and become searchable within
+ * a second through the near-real-time reopen thread. Author privacy is kept as a
+ * doc value so toggling a profile updates every post of that author in place.
+ */
+@Component
+public class PostSearchIndex {
+
+    private static final String ID = "id";
+    private static final String AUTHOR = "author";
+    private static final String AUTHOR_PRIVATE = "authorPrivate";
+    private static final String CONTENT = "content";
+
+    @Value("${socio.search.index-dir:search-index}")
+    private String indexDir;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = FSDirectory.open(Paths.get(indexDir));
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        searcherManager = new SearcherManager(writer, null);
+        reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager, 1.0, 0.05);
+        reopenThread.setName("post-search-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        reopenThread.close();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    public boolean isEmpty() {
+        return writer.getDocStats().numDocs == 0;
+    }
+
+    /**
+     * Add or replace a post in the index
+     */
+    public void index(Post post, boolean authorPrivate) {
+        if (post.getContent() == null || post.getContent().isBlank()) {
+            return;
+        }
+
+        Document doc = new Document();
+        doc.add(new StringField(ID, String.valueOf(post.getId()), Field.Store.YES));
+        doc.add(new StringField(AUTHOR, String.valueOf(post.getUserId()), Field.Store.NO));
+        doc.add(new NumericDocValuesField(AUTHOR_PRIVATE, authorPrivate ? 1 : 0));
+        doc.add(new TextField(CONTENT, post.getContent(), Field.Store.NO));
+        try {
+            writer.updateDocument(new Term(ID, String.valueOf(post.getId())), doc);
+        } catch (IOException e) {
+            throw new SearchIndexException("Could not index post " + post.getId() + ": " + e.getMessage());
+        }
+    }
+
+    public void delete(Long postId) {
+        try {
+            writer.deleteDocuments(new Term(ID, String.valueOf(postId)));
+        } catch (IOException e) {
+            throw new SearchIndexException("Could not remove post " + postId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flip the privacy flag on every indexed post of an author
+     */
+    public void updateAuthorPrivacy(String authorId, boolean authorPrivate) {
+        try {
+            writer.updateNumericDocValue(new Term(AUTHOR, authorId), AUTHOR_PRIVATE, authorPrivate ? 1 : 0);
+        } catch (IOException e) {
+            throw new SearchIndexException("Could not update privacy for author " + authorId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Search post content
+     *
+     * @param text the user's query
+     * @param visibleAuthors authors whose private posts the viewer may see, or null to see everything
+     * @param offset number of hits to skip
+     * @param limit maximum number of hits to return
+     */
+    public SearchHits search(String text, Collection<Long> visibleAuthors, int offset, int limit) {
+        Query textQuery = new SimpleQueryParser(analyzer, CONTENT).parse(text);
+        BooleanQuery.Builder query = new BooleanQuery.Builder().add(textQuery, BooleanClause.Occur.MUST);
+
+        if (visibleAuthors != null) {
+            List<BytesRef> authors = visibleAuthors.stream()
+                    .map(id -> new BytesRef(String.valueOf(id)))
+                    .collect(Collectors.toList());
+            Query visible = new BooleanQuery.Builder()
+                    .add(NumericDocValuesField.newSlowExactQuery(AUTHOR_PRIVATE, 0), BooleanClause.Occur.SHOULD)
+                    .add(new TermInSetQuery(AUTHOR, authors), BooleanClause.Occur.SHOULD)
+                    .build();
+            query.add(visible, BooleanClause.Occur.FILTER);
+        }
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs top = searcher.search(query.build(), offset + limit);
+            List<Long> ids = new ArrayList<>(limit);
+            ScoreDoc[] hits = top.scoreDocs;
+            for (int i = offset; i < hits.length; i++) {
+                ids.add(Long.valueOf(searcher.doc(hits[i].doc).get(ID)));
+            }
+            return new SearchHits(top.totalHits.value, ids);
+        } catch (IOException e) {
+            throw new SearchIndexException("Search failed: " + e.getMessage());
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException ignored) {
+                    // Nothing more to do with a searcher we are done with
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${socio.search.commit-interval-ms:30000}")
+    public void commit() throws IOException {
+        if (writer.hasUncommittedChanges()) {
+            writer.commit();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SearchHits {
+        private final long totalHits;
+        private final List<Long> postIds;
+    }
+}
+
+// PostSearchIndexer.java
+package com.socio.search;
+
+import com.socio.entity.Post;
+import com.socio.entity.User;
+import com.socio.repository.PostRepository;
+import com.socio.repository.UserRepository;
+import com.socio.sharding.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the search index from the posts table when the index is empty (first start or wiped index).
+ * Walks every shard in keyset chunks; authors are looked up on the home shard.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PostSearchIndexer {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final PostSearchIndex postSearchIndex;
+    private final PostRepository postRepository;
+    private final UserRepository userRepository;
+    private final ShardRouter shardRouter;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (!postSearchIndex.isEmpty()) {
+            return;
+        }
+
+        long indexed = 0;
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            indexed += indexShard(shard);
+        }
+        log.info("Built post search index with {} posts", indexed);
+    }
+
+    private long indexShard(int shard) {
+        long indexed = 0;
+        long afterId = Long.MIN_VALUE;
+        while (true) {
+            long after = afterId;
+            List<Post> chunk = shardRouter.onShard(shard,
+                    () -> postRepository.findChunkAfter(after, PageRequest.of(0, PAGE_SIZE)));
+            if (chunk.isEmpty()) {
+                return indexed;
+            }
+
+            Set<Long> authorIds = chunk.stream().map(Post::getUserId).collect(Collectors.toSet());
+            Map<Long, User> authors = userRepository.findAllById(authorIds).stream()
+                    .collect(Collectors.toMap(User::getId, Function.identity()));
+
+            for (Post post : chunk) {
+                User author = authors.get(post.getUserId());
+                postSearchIndex.index(post, author != null && author.isPrivate());
+            }
+            indexed += chunk.size();
+
+            if (chunk.size() < PAGE_SIZE) {
+                return indexed;
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+    }
+}
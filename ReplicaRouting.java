@@ -0,0 +1,340 @@
+// ReplicaProperties.java
+package com.socio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas, e.g.
+ *
+ * socio.datasource.replicas.enabled=true
+ * socio.datasource.replicas.urls[0]=jdbc:postgresql://replica-1/socio
+ * socio.datasource.replicas.urls[1]=jdbc:postgresql://replica-2/socio
+ *
+ * Replicas use the primary's driver and credentials unless username/password are set.
+ */
+@Data
+@ConfigurationProperties("socio.datasource.replicas")
+public class ReplicaProperties {
+    private boolean enabled;
+    private List<String> urls = new ArrayList<>();
+    private String username;
+    private String password;
+    private int maximumPoolSize = 10;
+    // How long after a client's write its reads stay on the primary; set above the worst replication lag plus clock skew
+    private long readYourWritesMs = 2000;
+}
+
+// ReadYourWritesTracker.java
+package com.socio.config;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Consistency token carried by the client: the time until which its reads must go to
+ * the primary because its last write may not have reached the replicas yet.
+ *
+ * After a write commits the token is returned as both a header and a cookie, and
+ * ReadYourWritesFilter reads it back from either on the next request, so any node can
+ * honour it without sticky sessions. The token is a timestamp rather than a replication
+ * position, so it works the same on every database; it only has to outlast the
+ * replication lag plus the clock skew between nodes. A token further ahead than one
+ * window is clamped, so a client cannot pin itself to the primary indefinitely.
+ */
+public class ReadYourWritesTracker {
+
+    public static final String HEADER = "X-Socio-Primary-Until";
+    public static final String COOKIE = "socio-primary-until";
+
+    private static final ThreadLocal<Long> PRIMARY_UNTIL = new ThreadLocal<>();
+
+    private final long windowMs;
+
+    public ReadYourWritesTracker(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Take the token the client sent, if any, for the current request
+     */
+    public void begin(HttpServletRequest request) {
+        String token = request.getHeader(HEADER);
+        if (token == null && request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (COOKIE.equals(cookie.getName())) {
+                    token = cookie.getValue();
+                }
+            }
+        }
+        if (token == null) {
+            return;
+        }
+        try {
+            PRIMARY_UNTIL.set(Math.min(Long.parseLong(token), System.currentTimeMillis() + windowMs));
+        } catch (NumberFormatException e) {
+            // Ignore a malformed token; the worst case is one stale read
+        }
+    }
+
+    public void end() {
+        PRIMARY_UNTIL.remove();
+    }
+
+    /**
+     * Pin the client's reads to the primary for the next window, within this request and
+     * on later requests that send the token back
+     */
+    public void recordWrite() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            // Not serving a request, so there is no client to hand a token to
+            return;
+        }
+        long until = System.currentTimeMillis() + windowMs;
+        PRIMARY_UNTIL.set(until);
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        if (response != null && !response.isCommitted()) {
+            response.setHeader(HEADER, Long.toString(until));
+            Cookie cookie = new Cookie(COOKIE, Long.toString(until));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (windowMs + 999) / 1000));
+            response.addCookie(cookie);
+        }
+    }
+
+    public boolean mustReadPrimary() {
+        Long until = PRIMARY_UNTIL.get();
+        return until != null && until > System.currentTimeMillis();
+    }
+}
+
+// ReadYourWritesFilter.java
+package com.socio.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Makes the client's read-your-writes token visible to routing for the duration of the request
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    private final ReadYourWritesTracker tracker;
+
+    public ReadYourWritesFilter(ReadYourWritesTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        tracker.begin(request);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            tracker.end();
+        }
+    }
+}
+
+// ReplicaRoutingDataSource.java
+package com.socio.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a replica, round robin, and everything else to the primary.
+ *
+ * The target is chosen when the transaction first needs a connection, so this must sit
+ * behind a LazyConnectionDataSourceProxy: the transaction manager asks for a connection
+ * before it marks the transaction read-only, and the proxy holds off until the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private final List<String> replicaKeys;
+    private final ReadYourWritesTracker tracker;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter primaryRoutes;
+    private final Counter replicaRoutes;
+    private final Counter pinnedRoutes;
+
+    public ReplicaRoutingDataSource(List<String> replicaKeys, ReadYourWritesTracker tracker, MeterRegistry meterRegistry) {
+        this.replicaKeys = replicaKeys;
+        this.tracker = tracker;
+        this.primaryRoutes = Counter.builder("socio.datasource.routed").tag("target", "primary").register(meterRegistry);
+        this.replicaRoutes = Counter.builder("socio.datasource.routed").tag("target", "replica").register(meterRegistry);
+        this.pinnedRoutes = Counter.builder("socio.datasource.routed").tag("target", "primary-read-your-writes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // Once this transaction commits, the user's reads stay on the primary until replicas catch up
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        tracker.recordWrite();
+                    }
+                });
+            }
+            primaryRoutes.increment();
+            return PRIMARY;
+        }
+        if (replicaKeys.isEmpty()) {
+            primaryRoutes.increment();
+            return PRIMARY;
+        }
+        if (tracker.mustReadPrimary()) {
+            pinnedRoutes.increment();
+            return PRIMARY;
+        }
+        replicaRoutes.increment();
+        return replicaKeys.get(Math.floorMod(next.getAndIncrement(), replicaKeys.size()));
+    }
+}
+
+// ReplicaDataSourceConfig.java
+package com.socio.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes @Transactional(readOnly = true) work to read replicas.
+ *
+ * Off unless socio.datasource.replicas.enabled=true; the primary is configured with
+ * the usual spring.datasource.* properties. Code outside a transaction, and JdbcTemplate
+ * batches, always use the primary.
+ *
+ * Locally, two embedded H2 databases stand in for a primary and a replica:
+ *
+ * spring.datasource.url=jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1
+ * socio.datasource.replicas.enabled=true
+ * socio.datasource.replicas.urls[0]=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1
+ *
+ * Nothing replicates between them, so the replica only holds what is loaded into it,
+ * which makes it easy to see where each read went; socio.datasource.routed counts them.
+ *
+ * Requires spring.jpa.open-in-view=false. With open-in-view the request's EntityManager
+ * keeps the first connection it gets, so whichever transaction runs first would decide
+ * primary or replica for the whole request, writes included.
+ */
+@Configuration
+@ConditionalOnProperty(name = "socio.datasource.replicas.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaDataSourceConfig {
+
+    // Replica pools are not beans, so they are closed here
+    private final List<HikariDataSource> replicaPools = new ArrayList<>();
+
+    @Value("${spring.jpa.open-in-view:true}")
+    private boolean openInView;
+
+    @PostConstruct
+    public void checkOpenInView() {
+        if (openInView) {
+            throw new IllegalStateException("Read replicas need spring.jpa.open-in-view=false, "
+                    + "otherwise routing is decided once per request");
+        }
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReadYourWritesTracker readYourWritesTracker(ReplicaProperties replicas) {
+        return new ReadYourWritesTracker(replicas.getReadYourWritesMs());
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(ReadYourWritesTracker readYourWritesTracker) {
+        return new ReadYourWritesFilter(readYourWritesTracker);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                 ReplicaProperties replicas, ReadYourWritesTracker readYourWritesTracker,
+                                 MeterRegistry meterRegistry) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primaryDataSource);
+        List<String> replicaKeys = new ArrayList<>();
+        for (int i = 0; i < replicas.getUrls().size(); i++) {
+            String key = "replica-" + i;
+            HikariDataSource replica = replicaDataSource(key, replicas.getUrls().get(i), properties, replicas);
+            replicaPools.add(replica);
+            targets.put(key, replica);
+            replicaKeys.add(key);
+        }
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(replicaKeys, readYourWritesTracker, meterRegistry);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primaryDataSource);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @PreDestroy
+    public void closeReplicas() {
+        replicaPools.forEach(HikariDataSource::close);
+    }
+
+    private static HikariDataSource replicaDataSource(String name, String url, DataSourceProperties primary,
+                                                      ReplicaProperties replicas) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("socio-" + name);
+        dataSource.setJdbcUrl(url);
+        dataSource.setDriverClassName(primary.determineDriverClassName());
+        dataSource.setUsername(replicas.getUsername() != null ? replicas.getUsername() : primary.determineUsername());
+        dataSource.setPassword(replicas.getPassword() != null ? replicas.getPassword() : primary.determinePassword());
+        dataSource.setMaximumPoolSize(replicas.getMaximumPoolSize());
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+}
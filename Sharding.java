@@ -0,0 +1,576 @@
+// ShardingProperties.java
+package com.socio.sharding;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shards for posts, likes and comments, e.g.
+ *
+ * socio.sharding.enabled=true
+ * socio.sharding.urls[0]=jdbc:postgresql://shard-0/socio
+ * socio.sharding.urls[1]=jdbc:postgresql://shard-1/socio
+ *
+ * Shard 0 is the home shard: it also holds every table that is not sharded. Shards use
+ * the primary's driver and credentials unless username/password are set.
+ */
+@Data
+@ConfigurationProperties("socio.sharding")
+public class ShardingProperties {
+    private boolean enabled;
+    private List<String> urls = new ArrayList<>();
+    private String username;
+    private String password;
+    private int maximumPoolSize = 10;
+    // Distinguishes app nodes in generated ids; must be unique per node, 0-31
+    private int nodeId;
+    private int scatterThreads = 16;
+    // Local testing only: copy shard 0's H2 schema to the other shards at startup
+    private boolean copyH2Schema;
+}
+
+// ShardContext.java
+package com.socio.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread's next connection should come from.
+ * Unset means the home shard.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T call(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
+
+// ShardIdGenerator.java
+package com.socio.sharding;
+
+/**
+ * Time-ordered 64-bit ids that carry the shard they were created on:
+ *
+ *   41 bits  milliseconds since 2024-01-01 (good for ~69 years)
+ *    8 bits  shard
+ *    5 bits  node
+ *   10 bits  sequence within the millisecond
+ *
+ * Ids sort by creation time across shards, and a post's shard can be read off its id
+ * without a lookup, so likes and comments route by post id alone.
+ */
+public class ShardIdGenerator {
+
+    public static final int MAX_SHARDS = 1 << 8;
+    public static final int MAX_NODES = 1 << 5;
+
+    private static final long EPOCH = 1704067200000L;
+    private static final int SEQUENCE_BITS = 10;
+    private static final int NODE_BITS = 5;
+    private static final int SHARD_SHIFT = SEQUENCE_BITS + NODE_BITS;
+    private static final int TIME_SHIFT = SHARD_SHIFT + 8;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // Hibernate instantiates id generators itself, so the configured instance is reachable statically
+    private static volatile ShardIdGenerator instance = new ShardIdGenerator(0);
+
+    private final long node;
+    private final long[] lastMillis = new long[MAX_SHARDS];
+    private final long[] sequence = new long[MAX_SHARDS];
+
+    public ShardIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId >= MAX_NODES) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + (MAX_NODES - 1));
+        }
+        this.node = nodeId;
+    }
+
+    public static ShardIdGenerator get() {
+        return instance;
+    }
+
+    static void configure(ShardIdGenerator generator) {
+        instance = generator;
+    }
+
+    public static int shardOf(long id) {
+        return (int) ((id >>> SHARD_SHIFT) & (MAX_SHARDS - 1));
+    }
+
+    public synchronized long next(int shard) {
+        long now = System.currentTimeMillis();
+        // Never go backwards, even if the clock does
+        if (now < lastMillis[shard]) {
+            now = lastMillis[shard];
+        }
+        if (now == lastMillis[shard]) {
+            sequence[shard] = (sequence[shard] + 1) & SEQUENCE_MASK;
+            if (sequence[shard] == 0) {
+                // Sequence exhausted for this millisecond, borrow the next one
+                now++;
+            }
+        } else {
+            sequence[shard] = 0;
+        }
+        lastMillis[shard] = now;
+        return ((now - EPOCH) << TIME_SHIFT) | ((long) shard << SHARD_SHIFT) | (node << SEQUENCE_BITS) | sequence[shard];
+    }
+}
+
+// ShardIdentifierGenerator.java
+package com.socio.sharding;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.io.Serializable;
+
+/**
+ * Hibernate id generator for sharded entities, used as
+ *
+ * @GeneratedValue(generator = "shard-id")
+ * @GenericGenerator(name = "shard-id", strategy = "com.socio.sharding.ShardIdentifierGenerator")
+ *
+ * The entity is saved on the shard in ShardContext, so that is the shard its id records.
+ */
+public class ShardIdentifierGenerator implements IdentifierGenerator {
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        Integer shard = ShardContext.current();
+        return ShardIdGenerator.get().next(shard != null ? shard : 0);
+    }
+}
+
+// ShardRoutingDataSource.java
+package com.socio.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections from the shard in ShardContext, or the home shard.
+ *
+ * Sits behind a LazyConnectionDataSourceProxy so the shard is read when a transaction
+ * issues its first statement rather than when it begins.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardContext.current();
+        return shard != null ? shard : 0;
+    }
+}
+
+// ShardRouter.java
+package com.socio.sharding;
+
+import com.socio.metrics.SqlStatementCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decides which shard holds a user's posts or a post's likes and comments, and runs
+ * work there.
+ *
+ * Posts live on their author's shard; likes and comments live with their post. With
+ * sharding off there is a single shard and every method runs its work directly, so
+ * callers don't need a separate unsharded path.
+ *
+ * Work on a shard runs in its own transaction, because a JPA transaction is bound to
+ * one connection. It commits independently of any transaction the caller holds.
+ */
+@Slf4j
+@Component
+public class ShardRouter {
+
+    private final TransactionTemplate shardTransaction;
+    // Only present when ShardingConfig is active
+    private final ShardingProperties sharding;
+
+    private boolean enabled;
+    private int shardCount = 1;
+    private ThreadPoolExecutor scatterExecutor;
+
+    public ShardRouter(PlatformTransactionManager transactionManager, ObjectProvider<ShardingProperties> sharding) {
+        this.shardTransaction = new TransactionTemplate(transactionManager);
+        this.shardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.sharding = sharding.getIfAvailable();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (sharding == null || !sharding.isEnabled()) {
+            return;
+        }
+        enabled = true;
+        shardCount = sharding.getUrls().size();
+        int scatterThreads = sharding.getScatterThreads();
+        if (shardCount < 1 || shardCount > ShardIdGenerator.MAX_SHARDS) {
+            throw new IllegalStateException("socio.sharding.urls must list 1 to " + ShardIdGenerator.MAX_SHARDS + " shards");
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        // Run on the caller when saturated, so a burst slows down instead of failing
+        scatterExecutor = new ThreadPoolExecutor(scatterThreads, scatterThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(scatterThreads * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "shard-scatter-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        scatterExecutor.allowCoreThreadTimeOut(true);
+        log.info("Sharding posts, likes and comments across {} shards", shardCount);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isSharded() {
+        return enabled;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardForUser(Long userId) {
+        if (!enabled) {
+            return 0;
+        }
+        // Spread sequential ids evenly; the multiplier is the 64-bit golden ratio
+        long mixed = userId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(mixed >>> 32, (long) shardCount);
+    }
+
+    public int shardForPost(Long postId) {
+        return enabled ? ShardIdGenerator.shardOf(postId) : 0;
+    }
+
+    /**
+     * Run work on one shard in a transaction of its own
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (!enabled) {
+            return work.get();
+        }
+        return ShardContext.call(shard, () -> shardTransaction.execute(status -> work.get()));
+    }
+
+    public <T> T onUserShard(Long userId, Supplier<T> work) {
+        return onShard(shardForUser(userId), work);
+    }
+
+    public <T> T onPostShard(Long postId, Supplier<T> work) {
+        return onShard(shardForPost(postId), work);
+    }
+
+    public Map<Integer, List<Long>> partitionByUser(Collection<Long> userIds) {
+        return partition(userIds, this::shardForUser);
+    }
+
+    public Map<Integer, List<Long>> partitionByPost(Collection<Long> postIds) {
+        return partition(postIds, this::shardForPost);
+    }
+
+    /**
+     * Run the same query on every shard
+     */
+    public <R> Map<Integer, R> scatterAll(Function<Integer, R> query) {
+        Map<Integer, Integer> shards = new LinkedHashMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards.put(shard, shard);
+        }
+        return scatter(shards, (shard, ignored) -> query.apply(shard));
+    }
+
+    /**
+     * Run a query on each shard that has a partition, in parallel, and wait for all of them.
+     * A single partition runs on the calling thread.
+     */
+    public <P, R> Map<Integer, R> scatter(Map<Integer, P> partitions, BiFunction<Integer, P, R> query) {
+        Map<Integer, R> results = new HashMap<>(partitions.size() * 2);
+        if (partitions.size() <= 1 || scatterExecutor == null) {
+            partitions.forEach((shard, partition) ->
+                    results.put(shard, onShard(shard, () -> query.apply(shard, partition))));
+            return results;
+        }
+
+        Map<Integer, CompletableFuture<R>> futures = new HashMap<>(partitions.size() * 2);
+        // Statements on the scatter threads count against the caller's SQL budget
+        partitions.forEach((shard, partition) -> futures.put(shard, CompletableFuture.supplyAsync(
+                SqlStatementCounter.propagate(() -> onShard(shard, () -> query.apply(shard, partition))),
+                scatterExecutor)));
+        try {
+            futures.forEach((shard, future) -> results.put(shard, future.join()));
+        } catch (CompletionException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Merge lists that are each sorted by order into one sorted list
+     *
+     * @param skip  leading elements to drop, for offset pagination
+     * @param limit most elements to return
+     */
+    public static <T> List<T> mergeSorted(Collection<List<T>> parts, Comparator<? super T> order, long skip, int limit) {
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(Math.max(parts.size(), 1),
+                (a, b) -> order.compare(a.value, b.value));
+        for (List<T> part : parts) {
+            Iterator<T> iterator = part.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head<>(iterator.next(), iterator));
+            }
+        }
+
+        List<T> merged = new ArrayList<>(Math.min(limit, 1024));
+        long skipped = 0;
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Head<T> head = heads.poll();
+            if (skipped < skip) {
+                skipped++;
+            } else {
+                merged.add(head.value);
+            }
+            if (head.rest.hasNext()) {
+                heads.add(new Head<>(head.rest.next(), head.rest));
+            }
+        }
+        return merged;
+    }
+
+    private Map<Integer, List<Long>> partition(Collection<Long> ids, Function<Long, Integer> shardOf) {
+        if (!enabled) {
+            return ids.isEmpty() ? Collections.emptyMap() : Collections.singletonMap(0, new ArrayList<>(ids));
+        }
+        Map<Integer, List<Long>> partitions = new HashMap<>();
+        for (Long id : ids) {
+            partitions.computeIfAbsent(shardOf.apply(id), shard -> new ArrayList<>()).add(id);
+        }
+        return partitions;
+    }
+
+    private static final class Head<T> {
+        private final T value;
+        private final Iterator<T> rest;
+
+        private Head(T value, Iterator<T> rest) {
+            this.value = value;
+            this.rest = rest;
+        }
+    }
+}
+
+// ShardingConfig.java
+package com.socio.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One pool per shard behind a routing DataSource.
+ *
+ * Every shard has the full schema, but only the home shard's copies of the unsharded
+ * tables are used, and shards carry no foreign keys to them. Hibernate's ddl-auto only
+ * reaches the home shard; create the other shards' schema with the same migrations.
+ * Not compatible with socio.datasource.replicas.
+ *
+ * Requires spring.jpa.open-in-view=false. With open-in-view the request's EntityManager
+ * keeps the first connection it gets, so every later shard transaction in the request
+ * would silently run against that first shard.
+ *
+ * Locally, embedded H2 databases can stand in for the shards:
+ *
+ * spring.datasource.url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1
+ * socio.sharding.enabled=true
+ * socio.sharding.urls[0]=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1
+ * socio.sharding.urls[1]=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1
+ * socio.sharding.urls[2]=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1
+ * socio.sharding.copy-h2-schema=true
+ */
+@Configuration
+@ConditionalOnProperty(name = "socio.sharding.enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    // Shard pools are not beans, so they are closed here
+    private final List<HikariDataSource> shardPools = new ArrayList<>();
+
+    @Value("${spring.jpa.open-in-view:true}")
+    private boolean openInView;
+
+    @PostConstruct
+    public void checkOpenInView() {
+        if (openInView) {
+            throw new IllegalStateException("Sharding needs spring.jpa.open-in-view=false, "
+                    + "otherwise a request stays on the first shard it touches");
+        }
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, ShardingProperties sharding) {
+        ShardIdGenerator.configure(new ShardIdGenerator(sharding.getNodeId()));
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < sharding.getUrls().size(); shard++) {
+            HikariDataSource pool = shardDataSource(shard, sharding.getUrls().get(shard), properties, sharding);
+            shardPools.add(pool);
+            targets.put(shard, pool);
+        }
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(targets.get(0));
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "socio.sharding.copy-h2-schema", havingValue = "true")
+    public H2ShardSchemaCopier h2ShardSchemaCopier(ShardRouter shardRouter, DataSource dataSource) {
+        return new H2ShardSchemaCopier(shardRouter, dataSource);
+    }
+
+    @PreDestroy
+    public void closeShards() {
+        shardPools.forEach(HikariDataSource::close);
+    }
+
+    private static HikariDataSource shardDataSource(int shard, String url, DataSourceProperties primary,
+                                                    ShardingProperties sharding) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("socio-shard-" + shard);
+        dataSource.setJdbcUrl(url);
+        dataSource.setDriverClassName(primary.determineDriverClassName());
+        dataSource.setUsername(sharding.getUsername() != null ? sharding.getUsername() : primary.determineUsername());
+        dataSource.setPassword(sharding.getPassword() != null ? sharding.getPassword() : primary.determinePassword());
+        dataSource.setMaximumPoolSize(sharding.getMaximumPoolSize());
+        return dataSource;
+    }
+}
+
+// H2ShardSchemaCopier.java
+package com.socio.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * For local testing on embedded H2: once Hibernate has created the schema on the home
+ * shard, replay it on the other shards without foreign keys or data
+ */
+@Slf4j
+public class H2ShardSchemaCopier {
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+
+    public H2ShardSchemaCopier(ShardRouter shardRouter, DataSource dataSource) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void copySchema() {
+        List<String> script = shardRouter.onShard(0, () -> jdbcTemplate.queryForList("SCRIPT NODATA", String.class));
+        for (int shard = 1; shard < shardRouter.getShardCount(); shard++) {
+            shardRouter.onShard(shard, () -> {
+                for (String statement : script) {
+                    if (isSchemaStatement(statement)) {
+                        jdbcTemplate.execute(statement);
+                    }
+                }
+                return null;
+            });
+        }
+        log.info("Copied H2 schema from shard 0 to {} shards", shardRouter.getShardCount() - 1);
+    }
+
+    private static boolean isSchemaStatement(String statement) {
+        String upper = statement.trim().toUpperCase();
+        if (upper.contains("FOREIGN KEY")) {
+            return false;
+        }
+        return (upper.startsWith("CREATE") && !upper.startsWith("CREATE USER")) || upper.startsWith("ALTER TABLE");
+    }
+}
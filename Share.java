@@ -1,6 +1,9 @@
 //Share Controller file
 package com.socio.controller;
 
+import com.socio.dto.BatchShareRequest;
+import com.socio.dto.BatchShareResult;
+import com.socio.dto.ShareInboxPage;
 import com.socio.entity.Share;
 import com.socio.service.ShareService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +27,12 @@ public class ShareController {
         return ResponseEntity.ok(share);
     }
 
+    @PostMapping("/sharePost/batch")
+    public ResponseEntity<BatchShareResult> sharePostWithUsers(@RequestBody BatchShareRequest request) {
+        return ResponseEntity.ok(shareService.sharePostWithUsers(
+                request.getPostId(), request.getSenderId(), request.getReceiverIds()));
+    }
+
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Share>> getSharesByUser(@PathVariable Long userId) {
         return ResponseEntity.ok(shareService.getSharesByUser(userId));
@@ -33,23 +42,67 @@ public class ShareController {
     public ResponseEntity<List<Share>> getSharesByPost(@PathVariable Long postId) {
         return ResponseEntity.ok(shareService.getSharesByPost(postId));
     }
+
+    @GetMapping("/inbox/{userId}")
+    public ResponseEntity<ShareInboxPage> getInbox(@PathVariable Long userId,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(shareService.getInbox(userId, cursor, Math.max(1, Math.min(size, 100))));
+    }
+
+    @GetMapping("/inbox/{userId}/unreadCount")
+    public ResponseEntity<Long> getUnreadCount(@PathVariable Long userId) {
+        return ResponseEntity.ok(shareService.getUnreadCount(userId));
+    }
+
+    @PostMapping("/inbox/{userId}/read")
+    public ResponseEntity<Long> markRead(@PathVariable Long userId,
+                                         @RequestParam(required = false) Long upToShareId) {
+        return ResponseEntity.ok(shareService.markRead(userId, upToShareId));
+    }
 }
 
 //ShareService file:
 package com.socio.service;
 
+import com.socio.dto.BatchShareResult;
+import com.socio.dto.PostPreviewDto;
+import com.socio.dto.ShareInboxItemDto;
+import com.socio.dto.ShareInboxPage;
 import com.socio.entity.Post;
 import com.socio.entity.Share;
+import com.socio.entity.ShareUnreadCounter;
 import com.socio.entity.User;
+import com.socio.event.ActivityEvent;
+import com.socio.exception.BadRequestException;
+import com.socio.metrics.MeteredService;
 import com.socio.repository.PostRepository;
 import com.socio.repository.ShareRepository;
+import com.socio.repository.ShareUnreadCounterRepository;
 import com.socio.repository.UserRepository;
+import com.socio.sharding.ShardRouter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
+@MeteredService
 public class ShareService {
 
     @Autowired
@@ -61,8 +114,25 @@ public class ShareService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ShareUnreadCounterRepository shareUnreadCounterRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Value("${socio.share.max-batch-receivers:500}")
+    private int maxBatchReceivers;
+
+    @Transactional
     public Share sharePostWithUser(Long postId, Long senderId, Long receiverId) {
-        Post post = postRepository.findById(postId)
+        // Shares live on the home shard; the post is on its author's shard and only its id is stored
+        Post post = shardRouter.onPostShard(postId, () -> postRepository.findById(postId))
                 .orElseThrow(() -> new RuntimeException("Post not found"));
 
         User sender = userRepository.findById(senderId)
@@ -75,7 +145,74 @@ public class ShareService {
         share.setPost(post);
         share.setSender(sender);
         share.setReceiver(receiver);
-        return shareRepository.save(share);
+        share.setCreatedAt(LocalDateTime.now());
+        Share saved = shareRepository.save(share);
+
+        incrementUnread(receiverId, 1);
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.SHARE, senderId, receiverId, postId));
+        return saved;
+    }
+
+    /**
+     * Share a post with many receivers at once.
+     * Receivers are validated with one IN query and the shares are inserted as one JDBC batch.
+     *
+     * @throws BadRequestException if receiverIds is missing, holds a null or is longer than maxBatchReceivers
+     */
+    @Transactional
+    public BatchShareResult sharePostWithUsers(Long postId, Long senderId, List<Long> receiverIds) {
+        if (receiverIds == null || receiverIds.contains(null)) {
+            throw new BadRequestException("receiverIds must be a list of user ids");
+        }
+        if (receiverIds.size() > maxBatchReceivers) {
+            throw new BadRequestException("At most " + maxBatchReceivers + " receivers per batch");
+        }
+        if (!shardRouter.onPostShard(postId, () -> postRepository.existsById(postId))) {
+            throw new RuntimeException("Post not found");
+        }
+        if (!userRepository.existsById(senderId)) {
+            throw new RuntimeException("Sender not found");
+        }
+
+        Set<Long> requested = new LinkedHashSet<>(receiverIds);
+        Set<Long> existing = requested.isEmpty()
+                ? new HashSet<>()
+                : new HashSet<>(userRepository.findExistingIds(requested));
+
+        List<BatchShareResult.Outcome> outcomes = new ArrayList<>(receiverIds.size());
+        List<Long> toShare = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (Long receiverId : receiverIds) {
+            BatchShareResult.Status status;
+            if (!seen.add(receiverId)) {
+                status = BatchShareResult.Status.DUPLICATE;
+            } else if (receiverId.equals(senderId)) {
+                status = BatchShareResult.Status.SELF_SHARE;
+            } else if (!existing.contains(receiverId)) {
+                status = BatchShareResult.Status.RECEIVER_NOT_FOUND;
+            } else {
+                status = BatchShareResult.Status.SHARED;
+                toShare.add(receiverId);
+            }
+            outcomes.add(new BatchShareResult.Outcome(receiverId, status));
+        }
+
+        if (!toShare.isEmpty()) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO shares (post_id, sender_id, receiver_id, created_at) VALUES (?, ?, ?, ?)",
+                    toShare, toShare.size(), (ps, receiverId) -> {
+                        ps.setLong(1, postId);
+                        ps.setLong(2, senderId);
+                        ps.setLong(3, receiverId);
+                        ps.setTimestamp(4, now);
+                    });
+            incrementUnread(toShare);
+            toShare.forEach(receiverId -> eventPublisher.publishEvent(
+                    ActivityEvent.of(ActivityEvent.Type.SHARE, senderId, receiverId, postId)));
+        }
+
+        return new BatchShareResult(postId, toShare.size(), outcomes);
     }
 
     public List<Share> getSharesByUser(Long userId) {
@@ -85,23 +222,113 @@ public class ShareService {
     public List<Share> getSharesByPost(Long postId) {
         return shareRepository.findByPostPostId(postId);
     }
+
+    /**
+     * Get one page of a user's share inbox, newest first. Pages by Share.createdAt and
+     * unread state is Share.readAt, both added to the Share entity and its table with the inbox.
+     *
+     * @param cursor the nextCursor of the previous page, or null for the first page
+     * @param size the page size, at least 1
+     */
+    @Transactional(readOnly = true)
+    public ShareInboxPage getInbox(Long userId, String cursor, int size) {
+        // Fetch one extra row to know whether there is a next page
+        PageRequest limit = PageRequest.of(0, size + 1);
+        List<ShareInboxItemDto> items;
+        if (cursor == null) {
+            items = shareRepository.findInboxFirstPage(userId, limit);
+        } else {
+            int separator = cursor.lastIndexOf('_');
+            if (separator < 0) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            LocalDateTime createdAt;
+            Long shareId;
+            try {
+                createdAt = LocalDateTime.parse(cursor.substring(0, separator));
+                shareId = Long.valueOf(cursor.substring(separator + 1));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            items = shareRepository.findInboxPageBefore(userId, createdAt, shareId, limit);
+        }
+
+        String nextCursor = null;
+        if (items.size() > size) {
+            items = items.subList(0, size);
+            ShareInboxItemDto last = items.get(size - 1);
+            nextCursor = last.getCreatedAt() + "_" + last.getShareId();
+        }
+
+        // One query per shard for all previews on the page
+        Set<Long> postIds = items.stream().map(ShareInboxItemDto::getPostId).collect(Collectors.toSet());
+        if (!postIds.isEmpty()) {
+            Map<Long, PostPreviewDto> previews = shardRouter.scatter(shardRouter.partitionByPost(postIds),
+                            (shard, ids) -> shareRepository.findPostPreviews(ids)).values().stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toMap(PostPreviewDto::getPostId, Function.identity()));
+            items.forEach(item -> item.setPost(previews.get(item.getPostId())));
+        }
+
+        return new ShareInboxPage(items, nextCursor, getUnreadCount(userId));
+    }
+
+    public long getUnreadCount(Long userId) {
+        return shareUnreadCounterRepository.findById(userId)
+                .map(ShareUnreadCounter::getUnreadCount)
+                .orElse(0L);
+    }
+
+    /**
+     * Mark shares as read
+     *
+     * @param upToShareId mark shares up to and including this one, or all if null
+     * @return the remaining unread count
+     */
+    @Transactional
+    public long markRead(Long userId, Long upToShareId) {
+        LocalDateTime now = LocalDateTime.now();
+        int marked = upToShareId == null
+                ? shareRepository.markAllRead(userId, now)
+                : shareRepository.markReadUpTo(userId, now, upToShareId);
+        if (marked > 0) {
+            shareUnreadCounterRepository.decrement(userId, marked);
+        }
+        return getUnreadCount(userId);
+    }
+
+    private void incrementUnread(List<Long> receiverIds) {
+        shareUnreadCounterRepository.incrementAll(receiverIds);
+    }
+
+    private void incrementUnread(Long receiverId, long delta) {
+        shareUnreadCounterRepository.increment(receiverId, delta);
+    }
 }
 
 //ReportService file
 package com.socio.service;
 
+import com.socio.dto.ModerationPage;
 import com.socio.entity.Post;
 import com.socio.entity.Report;
+import com.socio.entity.ReportStatus;
 import com.socio.entity.User;
+import com.socio.event.ActivityEvent;
+import com.socio.metrics.MeteredService;
 import com.socio.repository.PostRepository;
 import com.socio.repository.ReportRepository;
 import com.socio.repository.UserRepository;
+import com.socio.sharding.ShardRouter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 @Service
+@MeteredService
 public class ReportService {
 
     @Autowired
@@ -113,8 +340,18 @@ public class ReportService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ModerationQueue moderationQueue;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
     public Report reportPost(Long postId, Long reporterId, String reason) {
-        Post post = postRepository.findById(postId)
+        // Reports live on the home shard, the post on its author's shard
+        Post post = shardRouter.onPostShard(postId, () -> postRepository.findById(postId))
                 .orElseThrow(() -> new RuntimeException("Post not found"));
 
         User reporter = userRepository.findById(reporterId)
@@ -124,9 +361,39 @@ public class ReportService {
         report.setPost(post);
         report.setReporter(reporter);
         report.setReason(reason);
-        return reportRepository.save(report);
+        report.setStatus(ReportStatus.PENDING);
+        Report saved = reportRepository.save(report);
+
+        moderationQueue.recordReport(saved.getId(), postId, reason, saved.getCreatedAt());
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.REPORT, reporterId, null, postId));
+        return saved;
     }
 
+    public ModerationPage getModerationQueue(String cursor, int size) {
+        return moderationQueue.page(cursor, size);
+    }
+
+    @Transactional
+    public int resolveReports(List<Long> postIds) {
+        if (postIds == null || postIds.isEmpty()) {
+            return 0;
+        }
+        int updated = reportRepository.updateStatusForPosts(postIds, ReportStatus.PENDING, ReportStatus.RESOLVED);
+        moderationQueue.remove(postIds);
+        return updated;
+    }
+
+    @Transactional
+    public int deleteReports(List<Long> postIds) {
+        if (postIds == null || postIds.isEmpty()) {
+            return 0;
+        }
+        int deleted = reportRepository.deleteByPostIds(postIds);
+        moderationQueue.remove(postIds);
+        return deleted;
+    }
+
+    @Transactional(readOnly = true)
     public List<Report> getAllReports() {
         return reportRepository.findAll();
     }
@@ -139,6 +406,7 @@ public class ReportService {
 //ReportController 
 package com.socio.controller;
 
+import com.socio.dto.ModerationPage;
 import com.socio.entity.Report;
 import com.socio.service.ReportService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -172,5 +440,23 @@ public class ReportController {
         reportService.deleteReport(reportId);
         return ResponseEntity.ok("Report deleted successfully");
     }
+
+    @GetMapping("/queue")
+    public ResponseEntity<ModerationPage> getModerationQueue(@RequestParam(required = false) String cursor,
+                                                             @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(reportService.getModerationQueue(cursor, Math.max(1, Math.min(size, 200))));
+    }
+
+    @PostMapping("/queue/resolve")
+    public ResponseEntity<String> resolveReports(@RequestBody List<Long> postIds) {
+        int resolved = reportService.resolveReports(postIds);
+        return ResponseEntity.ok(resolved + " reports resolved");
+    }
+
+    @DeleteMapping("/queue")
+    public ResponseEntity<String> deleteReports(@RequestBody List<Long> postIds) {
+        int deleted = reportService.deleteReports(postIds);
+        return ResponseEntity.ok(deleted + " reports deleted");
+    }
 }
 
@@ -0,0 +1,145 @@
+// PostPreviewDto.java
+package com.socio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Just enough of a post to render it in a list
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostPreviewDto {
+    private Long postId;
+    private String contentPreview;
+    private String fileType;
+    private String fileUrl;
+}
+
+// ShareInboxItemDto.java
+package com.socio.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class ShareInboxItemDto {
+    private Long shareId;
+    private Long postId;
+    private Long senderId;
+    private String senderName;
+    private LocalDateTime createdAt;
+    private boolean read;
+    private PostPreviewDto post;
+
+    // Used by the JPQL constructor expression in ShareRepository
+    public ShareInboxItemDto(Long shareId, Long postId, Long senderId, String senderName,
+                             LocalDateTime createdAt, LocalDateTime readAt) {
+        this.shareId = shareId;
+        this.postId = postId;
+        this.senderId = senderId;
+        this.senderName = senderName;
+        this.createdAt = createdAt;
+        this.read = readAt != null;
+    }
+}
+
+// ShareInboxPage.java
+package com.socio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShareInboxPage {
+    private List<ShareInboxItemDto> items;
+    // Pass back as ?cursor= to get the next page, null on the last page
+    private String nextCursor;
+    private long unreadCount;
+}
+
+// ShareUnreadCounter.java
+package com.socio.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Number of unread shares per receiver, maintained on share and mark-read
+ */
+@Entity
+@Table(name = "share_unread_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShareUnreadCounter {
+
+    @Id
+    private Long receiverId;
+
+    private long unreadCount;
+}
+
+// BatchShareRequest.java
+package com.socio.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class BatchShareRequest {
+    private Long postId;
+    private Long senderId;
+    private List<Long> receiverIds;
+}
+
+// BatchShareResult.java
+package com.socio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchShareResult {
+    private Long postId;
+    private int sharedCount;
+    private List<Outcome> outcomes;
+
+    public enum Status {
+        SHARED,
+        RECEIVER_NOT_FOUND,
+        SELF_SHARE,
+        DUPLICATE
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Outcome {
+        private Long receiverId;
+        private Status status;
+    }
+}
@@ -0,0 +1,207 @@
+// SqlBudget.java
+package com.socio.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Most SQL statements a request handler or service method is expected to issue.
+ *
+ * On a controller method the budget covers the whole request; on a service method
+ * it covers that call, including the flush on commit. Set it a little above what the
+ * method issues today so an N+1 regression trips it and ordinary changes do not.
+ * See {@link SqlBudgetGuard} for what happens when it is exceeded.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SqlBudget {
+    int value();
+}
+
+// SqlBudgetGuard.java
+package com.socio.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Opens and closes {@link SqlScope}s and acts on the ones that went over budget.
+ *
+ * socio.sql-budget.mode:
+ *   LOG  - default; log a warning and count socio.sql.budget.exceeded{scope}
+ *   FAIL - for tests and benchmark runs; the statement that goes over budget throws
+ *          SqlBudgetExceededException, failing the request
+ *   OFF  - count statements for metrics only
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SqlBudgetGuard {
+
+    public static final String SUMMARY = "socio.sql.statements";
+
+    public enum Mode {
+        LOG,
+        FAIL,
+        OFF
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${socio.sql-budget.mode:LOG}")
+    private Mode mode;
+
+    public SqlScope open(String name, int budget) {
+        return SqlStatementCounter.open(name, budget, mode == Mode.FAIL);
+    }
+
+    public void close(SqlScope scope) {
+        SqlStatementCounter.close(scope);
+        if (mode == Mode.OFF || !scope.isExceeded()) {
+            return;
+        }
+        Counter.builder("socio.sql.budget.exceeded")
+                .tag("scope", scope.getName())
+                .register(meterRegistry)
+                .increment();
+        // In FAIL mode the exception already says so
+        if (mode == Mode.LOG) {
+            log.warn("SQL budget exceeded in {}: {} statements, budget {}",
+                    scope.getName(), scope.getCount(), scope.getBudget());
+        }
+    }
+
+    /**
+     * Record a method scope's count; request scopes are recorded by SqlStatementCountFilter per route
+     */
+    public void record(SqlScope scope) {
+        meterRegistry.summary(SUMMARY, "scope", scope.getName()).record(scope.getCount());
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+}
+
+// SqlBudgetAspect.java
+package com.socio.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+
+/**
+ * Counts the statements of each transactional or budgeted service call.
+ *
+ * Ordered ahead of the transaction interceptor so the flush on commit is counted
+ * against the method that caused it. Methods without a {@link SqlBudget} are
+ * measured but never exceed. Only @Service beans are matched; repositories are
+ * transactional too, and timing every repository call as a scope would flood the
+ * summary with one-statement entries.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class SqlBudgetAspect {
+
+    private final SqlBudgetGuard sqlBudgetGuard;
+
+    @Around("execution(public * *(..)) && @within(org.springframework.stereotype.Service)"
+            + " && (@annotation(org.springframework.transaction.annotation.Transactional)"
+            + " || @annotation(com.socio.metrics.SqlBudget) || @within(com.socio.metrics.SqlBudget))")
+    public Object count(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (sqlBudgetGuard.getMode() == SqlBudgetGuard.Mode.OFF) {
+            return joinPoint.proceed();
+        }
+        Class<?> targetClass = AopUtils.getTargetClass(joinPoint.getTarget());
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        SqlBudget budget = AnnotatedElementUtils.findMergedAnnotation(method, SqlBudget.class);
+        if (budget == null) {
+            budget = AnnotatedElementUtils.findMergedAnnotation(targetClass, SqlBudget.class);
+        }
+
+        SqlScope scope = sqlBudgetGuard.open(targetClass.getSimpleName() + "." + method.getName(),
+                budget != null ? budget.value() : SqlScope.UNLIMITED);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            sqlBudgetGuard.close(scope);
+            sqlBudgetGuard.record(scope);
+        }
+    }
+}
+
+// SqlBudgetInterceptor.java
+package com.socio.metrics;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Applies a controller's {@link SqlBudget} to the request scope opened by
+ * SqlStatementCountFilter, which runs before the handler is known
+ */
+@Component
+public class SqlBudgetInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        SqlBudget budget = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getMethod(), SqlBudget.class);
+        if (budget == null) {
+            budget = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), SqlBudget.class);
+        }
+        SqlScope scope = SqlStatementCounter.outermost();
+        if (budget != null && scope != null) {
+            scope.assignBudget(handlerMethod.getBeanType().getSimpleName() + "."
+                    + handlerMethod.getMethod().getName(), budget.value());
+        }
+        return true;
+    }
+}
+
+// SqlBudgetWebConfig.java
+package com.socio.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+public class SqlBudgetWebConfig implements WebMvcConfigurer {
+
+    private final SqlBudgetInterceptor sqlBudgetInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(sqlBudgetInterceptor).addPathPatterns("/api/**");
+    }
+}
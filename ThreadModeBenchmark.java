@@ -0,0 +1,140 @@
+// ThreadModeBenchmark.java
+package com.socio.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compares the Tomcat-style platform pool with virtual threads on a request that
+ * looks like ours: wait for a pooled connection, block on a query, block on file I/O.
+ *
+ * Usage: ThreadModeBenchmark [requests] [dbConnections] [dbLatencyMs] [ioLatencyMs] [platformThreads]
+ *
+ * The "virtual-pinned" run does the query while holding a monitor, the way
+ * MediaStore used to, to show what a single synchronized block costs.
+ */
+public class ThreadModeBenchmark {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final int requests;
+    private final int dbLatencyMs;
+    private final int ioLatencyMs;
+    private final Semaphore connections;
+    private final Object[] monitors = new Object[LOCK_STRIPES];
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public ThreadModeBenchmark(int requests, int dbConnections, int dbLatencyMs, int ioLatencyMs) {
+        this.requests = requests;
+        this.dbLatencyMs = dbLatencyMs;
+        this.ioLatencyMs = ioLatencyMs;
+        this.connections = new Semaphore(dbConnections, true);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            monitors[i] = new Object();
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requests = intArg(args, 0, 20000);
+        int dbConnections = intArg(args, 1, 50);
+        int dbLatencyMs = intArg(args, 2, 5);
+        int ioLatencyMs = intArg(args, 3, 20);
+        int platformThreads = intArg(args, 4, 200);
+
+        ThreadModeBenchmark bench = new ThreadModeBenchmark(requests, dbConnections, dbLatencyMs, ioLatencyMs);
+        System.out.printf("requests=%d dbConnections=%d dbLatencyMs=%d ioLatencyMs=%d platformThreads=%d%n",
+                requests, dbConnections, dbLatencyMs, ioLatencyMs, platformThreads);
+
+        // Warm up the JIT and the semaphore before measuring anything
+        bench.run("warmup", Executors.newVirtualThreadPerTaskExecutor(), false, false);
+
+        bench.run("platform", Executors.newFixedThreadPool(platformThreads), false, true);
+        bench.run("virtual", Executors.newVirtualThreadPerTaskExecutor(), false, true);
+        bench.run("virtual-pinned", Executors.newVirtualThreadPerTaskExecutor(), true, true);
+    }
+
+    private void run(String mode, ExecutorService executor, boolean pinned, boolean report) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        long[] latencies = new long[requests];
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int request = i;
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    handle(request, pinned);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latencies[request] = System.nanoTime() - submitted;
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        if (!report) {
+            return;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-15s %8.0f req/s  p50=%6.1f ms  p99=%7.1f ms  max=%7.1f ms  peakOsThreads=%d%n",
+                mode,
+                requests / (elapsed / 1e9),
+                millis(percentile(latencies, 0.50)),
+                millis(percentile(latencies, 0.99)),
+                millis(latencies[latencies.length - 1]),
+                threads.getPeakThreadCount());
+    }
+
+    private void handle(int request, boolean pinned) throws InterruptedException {
+        int stripe = request % LOCK_STRIPES;
+        if (pinned) {
+            synchronized (monitors[stripe]) {
+                query();
+            }
+        } else {
+            locks[stripe].lock();
+            try {
+                query();
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+        Thread.sleep(ioLatencyMs);
+    }
+
+    private void query() throws InterruptedException {
+        connections.acquire();
+        try {
+            Thread.sleep(dbLatencyMs);
+        } finally {
+            connections.release();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+}
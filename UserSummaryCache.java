@@ -0,0 +1,260 @@
+// UserSummary.java
+package com.socio.cache;
+
+import lombok.Value;
+
+/**
+ * The handful of user fields most code paths need, without loading the full entity
+ */
+@Value
+public class UserSummary {
+    Long id;
+    String name;
+    String email;
+    boolean isPrivate;
+    boolean isAdmin;
+}
+
+// UserSummaryCache.java
+package com.socio.cache;
+
+import com.socio.entity.User;
+import com.socio.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared cache of {@link UserSummary} records, indexed by id and by email.
+ *
+ * Entries are loaded on first use and evicted by UserServiceImpl whenever a
+ * cached field can change. Eviction happens at once and again when the surrounding
+ * transaction completes, and a load only fills the cache if no eviction happened
+ * while it read from the database, so a reader cannot put back the row as it was
+ * before the change committed. Entries also expire after ttlSeconds, which bounds
+ * how long a change made on another node stays invisible here.
+ *
+ * When the cache grows past maxEntries an arbitrary entry is dropped, which is
+ * cheap and good enough for a working set this small.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserSummaryCache {
+
+    private final UserRepository userRepository;
+
+    private final ConcurrentHashMap<Long, Cached> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> idByEmail = new ConcurrentHashMap<>();
+    // Bumped on every eviction; a load that started before the bump is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Value("${socio.cache.user-summary.max-entries:200000}")
+    private int maxEntries;
+
+    @Value("${socio.cache.user-summary.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    public Optional<UserSummary> get(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        UserSummary cached = cached(id);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        misses.increment();
+        long loadedAt = generation.get();
+        return userRepository.findById(id).map(user -> put(user, loadedAt));
+    }
+
+    public Optional<UserSummary> getByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        Long id = idByEmail.get(email);
+        UserSummary cached = id != null ? cached(id) : null;
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        misses.increment();
+        long loadedAt = generation.get();
+        return userRepository.findByEmail(email).map(user -> put(user, loadedAt));
+    }
+
+    /**
+     * Get many users at once, loading all misses with a single query
+     *
+     * @return summaries keyed by id; unknown ids are left out
+     */
+    public Map<Long, UserSummary> getAll(Collection<Long> ids) {
+        Map<Long, UserSummary> result = new HashMap<>(ids.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (id == null || result.containsKey(id)) {
+                continue;
+            }
+            UserSummary cached = cached(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        hits.add(result.size());
+        misses.add(missing.size());
+
+        if (!missing.isEmpty()) {
+            long loadedAt = generation.get();
+            for (User user : userRepository.findAllById(missing)) {
+                UserSummary summary = put(user, loadedAt);
+                result.put(summary.getId(), summary);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * How many of these ids are cached right now, without loading or counting a hit
+     */
+    public int countCached(Collection<Long> ids) {
+        int cached = 0;
+        for (Long id : ids) {
+            if (id != null && cached(id) != null) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Drop a user now and again once the current transaction completes
+     */
+    public void evict(Long id) {
+        remove(id);
+        afterCompletion(() -> remove(id));
+    }
+
+    /**
+     * Drop a user by email now and again once the current transaction completes
+     */
+    public void evictByEmail(String email) {
+        removeByEmail(email);
+        afterCompletion(() -> removeByEmail(email));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private UserSummary cached(Long id) {
+        Cached cached = byId.get(id);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt < System.currentTimeMillis()) {
+            byId.remove(id, cached);
+            idByEmail.remove(cached.summary.getEmail(), id);
+            return null;
+        }
+        return cached.summary;
+    }
+
+    private void remove(Long id) {
+        generation.incrementAndGet();
+        Cached removed = byId.remove(id);
+        if (removed != null) {
+            idByEmail.remove(removed.summary.getEmail(), id);
+        }
+    }
+
+    private void removeByEmail(String email) {
+        generation.incrementAndGet();
+        Long id = idByEmail.remove(email);
+        if (id != null) {
+            byId.remove(id);
+        }
+    }
+
+    /**
+     * Cache a user loaded while the generation was loadedAt, unless something was evicted since
+     */
+    private UserSummary put(User user, long loadedAt) {
+        UserSummary summary = new UserSummary(user.getId(), user.getName(), user.getEmail(),
+                user.isPrivate(), user.isAdmin());
+        if (generation.get() != loadedAt) {
+            return summary;
+        }
+        if (byId.size() >= maxEntries) {
+            Iterator<Long> it = byId.keySet().iterator();
+            if (it.hasNext()) {
+                Long victim = it.next();
+                Cached removed = byId.remove(victim);
+                if (removed != null) {
+                    idByEmail.remove(removed.summary.getEmail(), victim);
+                }
+                evictions.increment();
+            }
+        }
+        Cached cached = new Cached(summary, System.currentTimeMillis() + ttlSeconds * 1000);
+        byId.put(summary.getId(), cached);
+        idByEmail.put(summary.getEmail(), summary.getId());
+        if (generation.get() != loadedAt) {
+            // An eviction ran between the check above and the put
+            byId.remove(summary.getId(), cached);
+            idByEmail.remove(summary.getEmail(), summary.getId());
+        }
+        return summary;
+    }
+
+    private static void afterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    private static final class Cached {
+        private final UserSummary summary;
+        private final long expiresAt;
+
+        Cached(UserSummary summary, long expiresAt) {
+            this.summary = summary;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
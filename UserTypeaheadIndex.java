@@ -0,0 +1,574 @@
+// UserSuggestionDto.java
+package com.socio.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSuggestionDto {
+    private String userId;
+    private String name;
+    // Only filled in for admins
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String email;
+    private long followerCount;
+}
+
+// UserTypeaheadIndex.java
+package com.socio.search;
+
+import com.socio.dto.UserSuggestionDto;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index over user names and email local-parts.
+ *
+ * Every trie node caches its best users by follower count, so a lookup is a walk down
+ * the prefix plus a copy of at most TOP_K entries. A change re-offers the user to the
+ * nodes on its paths only. A node whose cached list runs short after removals is refilled
+ * on the next lookup by merging its children's lists, never by scanning its subtree.
+ *
+ * Email local-parts are indexed under a separate root, so only lookups that ask for
+ * emails can match on them.
+ *
+ * Changes made while a rebuild is loading are recorded and replayed onto the loaded
+ * index before it is swapped in. A follower count change that the load also read is
+ * then counted twice, until the next rebuild.
+ */
+@Component
+public class UserTypeaheadIndex {
+
+    public static final int TOP_K = 10;
+
+    // Room above TOP_K so a few removals do not force a refill
+    private static final int CAPACITY = 2 * TOP_K;
+    // Cannot start a normalized key, so email keys never match a name lookup
+    private static final char EMAIL_MARKER = '@';
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Trie trie = new Trie();
+    // Changes made while a rebuild is loading, in order; null when no rebuild is running
+    private List<Consumer<Trie>> pendingChanges;
+
+    /**
+     * Add a user, or re-index one whose name or email changed
+     */
+    public void put(String userId, String name, String email, long followerCount) {
+        // A fresh Entry per trie, since entries carry their score
+        apply(index -> index.put(new Entry(userId, name, email, followerCount)));
+    }
+
+    public void remove(String userId) {
+        apply(index -> index.remove(userId));
+    }
+
+    /**
+     * Apply a follower count change, e.g. +1 on follow and -1 on unfollow
+     */
+    public void adjustFollowerCount(String userId, long delta) {
+        apply(index -> index.adjustScore(userId, delta));
+    }
+
+    /**
+     * Start recording changes for a rebuild; call before it reads any user
+     */
+    public void beginReplace() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stop recording after a rebuild failed to load
+     */
+    public void abandonReplace() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the whole index, used by the periodic rebuild. Changes recorded since
+     * beginReplace() are replayed onto the new index before it is swapped in.
+     */
+    public void replaceAll(List<UserSuggestionDto> users) {
+        Trie fresh = new Trie();
+        for (UserSuggestionDto user : users) {
+            fresh.put(new Entry(user.getUserId(), user.getName(), user.getEmail(), user.getFollowerCount()));
+        }
+        lock.writeLock().lock();
+        try {
+            if (pendingChanges != null) {
+                pendingChanges.forEach(change -> change.accept(fresh));
+                pendingChanges = null;
+            }
+            trie = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Consumer<Trie> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(trie);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Top users whose name starts with the prefix, most followed first
+     *
+     * @param includeEmail also match email local-parts and return emails, for admins only
+     */
+    public List<UserSuggestionDto> complete(String prefix, int limit, boolean includeEmail) {
+        String key = normalize(prefix);
+        int k = Math.min(limit, TOP_K);
+        if (key.isEmpty() || k <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Node> nodes = find(key, includeEmail);
+            if (nodes.stream().noneMatch(Trie::isShort)) {
+                return trie.suggestions(nodes, k, includeEmail);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // A cached list ran short after removals, refill it under the write lock
+        lock.writeLock().lock();
+        try {
+            List<Node> nodes = find(key, includeEmail);
+            nodes.forEach(trie::refill);
+            return trie.suggestions(nodes, k, includeEmail);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return trie.entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Node> find(String key, boolean includeEmail) {
+        List<Node> nodes = new ArrayList<>(2);
+        Node byName = trie.find(key);
+        if (byName != null) {
+            nodes.add(byName);
+        }
+        if (includeEmail) {
+            Node byEmail = trie.find(EMAIL_MARKER + key);
+            if (byEmail != null) {
+                nodes.add(byEmail);
+            }
+        }
+        return nodes;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static Set<String> keysFor(Entry entry) {
+        Set<String> keys = new LinkedHashSet<>();
+        String name = normalize(entry.name);
+        if (!name.isEmpty()) {
+            keys.add(name);
+            keys.addAll(Arrays.asList(name.split(" ")));
+        }
+        if (entry.email != null) {
+            int at = entry.email.indexOf('@');
+            String local = normalize(at >= 0 ? entry.email.substring(0, at) : entry.email);
+            if (!local.isEmpty()) {
+                keys.add(EMAIL_MARKER + local);
+            }
+        }
+        return keys;
+    }
+
+    private static final class Entry {
+        private final String userId;
+        private final String name;
+        private final String email;
+        private long score;
+
+        Entry(String userId, String name, String email, long score) {
+            this.userId = userId;
+            this.name = name;
+            this.email = email;
+            this.score = score;
+        }
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final String[] NO_IDS = new String[0];
+
+        // Children sorted by character, searched with binary search
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        // Users whose key ends exactly at this node
+        private String[] terminal = NO_IDS;
+        // Best users in this subtree, highest score first. Every user of the subtree
+        // missing from it scores no higher than its last entry.
+        private String[] top = NO_IDS;
+        // Distinct users in this subtree
+        private int count;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = new Node();
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[at];
+        }
+    }
+
+    private static final class Trie {
+        private final Node root = new Node();
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final Map<String, Set<String>> keysByUser = new HashMap<>();
+
+        void put(Entry entry) {
+            Entry existing = entries.get(entry.userId);
+            Set<String> oldKeys = existing != null ? keysByUser.get(entry.userId) : Collections.emptySet();
+            Set<String> keys = keysFor(entry);
+            Set<Node> before = nodesOn(oldKeys, false);
+            for (String key : oldKeys) {
+                Node end = find(key);
+                end.terminal = without(end.terminal, entry.userId);
+            }
+            entries.put(entry.userId, entry);
+            keysByUser.put(entry.userId, keys);
+            Set<Node> after = nodesOn(keys, true);
+            for (String key : keys) {
+                Node end = find(key);
+                end.terminal = append(end.terminal, entry.userId);
+            }
+
+            for (Node node : before) {
+                if (after.contains(node)) {
+                    reposition(node, entry, existing.score);
+                } else {
+                    node.count--;
+                    node.top = without(node.top, entry.userId);
+                }
+            }
+            for (Node node : after) {
+                if (!before.contains(node)) {
+                    node.count++;
+                    offer(node, entry);
+                }
+            }
+        }
+
+        void remove(String userId) {
+            Set<String> keys = keysByUser.remove(userId);
+            entries.remove(userId);
+            if (keys == null) {
+                return;
+            }
+            for (Node node : nodesOn(keys, false)) {
+                node.count--;
+                node.top = without(node.top, userId);
+            }
+            for (String key : keys) {
+                Node end = find(key);
+                end.terminal = without(end.terminal, userId);
+            }
+        }
+
+        void adjustScore(String userId, long delta) {
+            Entry entry = entries.get(userId);
+            if (entry == null) {
+                return;
+            }
+            long oldScore = entry.score;
+            entry.score = Math.max(0, oldScore + delta);
+            for (Node node : nodesOn(keysByUser.get(userId), false)) {
+                reposition(node, entry, oldScore);
+            }
+        }
+
+        Node find(String prefix) {
+            Node node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            return node;
+        }
+
+        static boolean isShort(Node node) {
+            return node.top.length < Math.min(TOP_K, node.count);
+        }
+
+        /**
+         * Rebuild a short list from the node's own users and its children's lists. Only
+         * children that are short themselves are refilled first, so the work is bounded by
+         * the short nodes below, not by the size of the subtree.
+         */
+        void refill(Node node) {
+            if (!isShort(node)) {
+                return;
+            }
+            Set<String> candidates = new LinkedHashSet<>(Arrays.asList(node.terminal));
+            // Users missing from a child's list score no higher than its last entry
+            long threshold = Long.MIN_VALUE;
+            for (Node child : node.children) {
+                refill(child);
+                Collections.addAll(candidates, child.top);
+                if (child.top.length < child.count) {
+                    threshold = Math.max(threshold, entries.get(child.top[child.top.length - 1]).score);
+                }
+            }
+            List<String> ranked = new ArrayList<>(candidates);
+            ranked.sort((a, b) -> Long.compare(entries.get(b).score, entries.get(a).score));
+            int size = 0;
+            while (size < ranked.size() && size < CAPACITY && entries.get(ranked.get(size)).score >= threshold) {
+                size++;
+            }
+            node.top = ranked.subList(0, size).toArray(Node.NO_IDS);
+        }
+
+        List<UserSuggestionDto> suggestions(List<Node> nodes, int k, boolean includeEmail) {
+            Set<String> ids = new LinkedHashSet<>();
+            for (Node node : nodes) {
+                ids.addAll(Arrays.asList(node.top).subList(0, Math.min(k, node.top.length)));
+            }
+            List<String> ranked = new ArrayList<>(ids);
+            if (nodes.size() > 1) {
+                ranked.sort((a, b) -> Long.compare(entries.get(b).score, entries.get(a).score));
+            }
+            List<UserSuggestionDto> result = new ArrayList<>(Math.min(k, ranked.size()));
+            for (int i = 0; i < ranked.size() && result.size() < k; i++) {
+                Entry entry = entries.get(ranked.get(i));
+                result.add(new UserSuggestionDto(entry.userId, entry.name,
+                        includeEmail ? entry.email : null, entry.score));
+            }
+            return result;
+        }
+
+        /**
+         * Every node on the paths of the given keys, once each even where keys share a prefix
+         */
+        private Set<Node> nodesOn(Set<String> keys, boolean create) {
+            Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String key : keys) {
+                Node node = root;
+                for (int i = 0; i < key.length() && node != null; i++) {
+                    node = create ? node.childOrCreate(key.charAt(i)) : node.child(key.charAt(i));
+                    if (node != null) {
+                        nodes.add(node);
+                    }
+                }
+            }
+            return nodes;
+        }
+
+        /**
+         * Update a node after the entry's score changed from oldScore
+         */
+        private void reposition(Node node, Entry entry, long oldScore) {
+            String[] top = node.top;
+            if (indexOf(top, entry.userId) < 0) {
+                offer(node, entry);
+                return;
+            }
+            String last = top[top.length - 1];
+            long oldLowest = last.equals(entry.userId) ? oldScore : entries.get(last).score;
+            if (entry.score < oldLowest && top.length < node.count) {
+                // Users outside the list may now outrank it, so it cannot stay
+                node.top = without(top, entry.userId);
+                return;
+            }
+            top = top.clone();
+            sort(top);
+            node.top = top;
+        }
+
+        /**
+         * Offer an entry that is not in the node's list
+         */
+        private void offer(Node node, Entry entry) {
+            String[] top = node.top;
+            boolean onlyOneMissing = top.length == node.count - 1;
+            if (!onlyOneMissing && (top.length == 0 || entries.get(top[top.length - 1]).score > entry.score)) {
+                return;
+            }
+            top = Arrays.copyOf(top, top.length + 1);
+            top[top.length - 1] = entry.userId;
+            sort(top);
+            node.top = top.length > CAPACITY ? Arrays.copyOf(top, CAPACITY) : top;
+        }
+
+        private void sort(String[] ids) {
+            Arrays.sort(ids, (a, b) -> Long.compare(entries.get(b).score, entries.get(a).score));
+        }
+
+        private static int indexOf(String[] ids, String userId) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i].equals(userId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static String[] append(String[] ids, String userId) {
+            if (indexOf(ids, userId) >= 0) {
+                return ids;
+            }
+            String[] grown = Arrays.copyOf(ids, ids.length + 1);
+            grown[ids.length] = userId;
+            return grown;
+        }
+
+        private static String[] without(String[] ids, String userId) {
+            int i = indexOf(ids, userId);
+            if (i < 0) {
+                return ids;
+            }
+            String[] shrunk = new String[ids.length - 1];
+            System.arraycopy(ids, 0, shrunk, 0, i);
+            System.arraycopy(ids, i + 1, shrunk, i, ids.length - i - 1);
+            return shrunk;
+        }
+    }
+}
+
+// UserTypeaheadLoader.java
+package com.socio.search;
+
+import com.socio.dto.UserSuggestionDto;
+import com.socio.entity.User;
+import com.socio.repository.FollowRepository;
+import com.socio.repository.FollowerCount;
+import com.socio.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the typeahead index on startup and rebuilds it nightly,
+ * which also corrects any ranking drift from incremental updates
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserTypeaheadLoader {
+
+    private static final int PAGE_SIZE = 5000;
+
+    private final UserTypeaheadIndex userTypeaheadIndex;
+    private final UserRepository userRepository;
+    private final FollowRepository followRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${socio.typeahead.rebuild-cron:0 30 3 * * *}")
+    public void rebuild() {
+        userTypeaheadIndex.beginReplace();
+        List<UserSuggestionDto> users;
+        try {
+            users = load();
+        } catch (RuntimeException e) {
+            userTypeaheadIndex.abandonReplace();
+            throw e;
+        }
+
+        userTypeaheadIndex.replaceAll(users);
+        log.info("Loaded {} users into the typeahead index", users.size());
+    }
+
+    private List<UserSuggestionDto> load() {
+        Map<Long, Long> followerCounts = new HashMap<>();
+        for (FollowerCount count : followRepository.countFollowersPerUser()) {
+            followerCounts.put(count.getUserId(), count.getFollowerCount());
+        }
+
+        List<UserSuggestionDto> users = new ArrayList<>();
+        Page<User> page = userRepository.findAll(PageRequest.of(0, PAGE_SIZE, Sort.by("id")));
+        while (page.hasContent()) {
+            for (User user : page) {
+                users.add(new UserSuggestionDto(String.valueOf(user.getId()), user.getName(), user.getEmail(),
+                        followerCounts.getOrDefault(user.getId(), 0L)));
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = userRepository.findAll(page.nextPageable());
+        }
+        return users;
+    }
+}
@@ -0,0 +1,306 @@
+// VersionStamp.java
+package com.socio.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * A version counter behind ETags, shared by every node and kept on the home shard.
+ * A post's row exists from its creation until its deletion.
+ */
+@Entity
+@Table(name = "version_stamps")
+@IdClass(VersionStamp.Key.class)
+@Data
+@NoArgsConstructor
+public class VersionStamp {
+
+    // A user's feed, as of their followees' last post or delete
+    public static final String FEED = "F";
+    // Whom a user follows, which decides what they may see
+    public static final String FOLLOWS = "V";
+    public static final String POST = "P";
+    public static final String PROFILE = "U";
+    // Posts by authors with too many followers to fan out to; key 0
+    public static final String POPULAR = "H";
+    // Changes that can affect any response; key 0
+    public static final String GLOBAL = "G";
+
+    @Id
+    @Column(name = "kind", length = 1)
+    private String kind;
+
+    @Id
+    @Column(name = "key_id")
+    private Long keyId;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String kind;
+        private Long keyId;
+    }
+}
+
+// VersionStamps.java
+package com.socio.cache;
+
+import com.socio.entity.VersionStamp;
+import com.socio.event.ActivityEvent;
+import com.socio.repository.FollowRepository;
+import com.socio.repository.VersionStampRepository;
+import com.socio.sharding.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Version counters for feeds, posts and profiles, turned into weak ETags so that
+ * conditional GETs can answer 304 without building the page.
+ *
+ * Checking a tag is not free: it costs one primary-key lookup of a few rows on the home
+ * shard, made in the request's own connection. Versions kept in memory would avoid it, but
+ * every node would then need every other node's bumps, and there is nothing to carry them.
+ * Keeping them in the version_stamps table means every node, before and after a restart,
+ * derives the same tag from the same data.
+ *
+ * Versions are bumped in a transaction of their own once the mutation's transaction has
+ * committed, never before, so a tag is never paired with data older than it. What bumps what:
+ *   post created or deleted  the author's feed and their followers' feeds
+ *   like or comment          the post only; feed pages show the new counts within maxStaleness
+ *   follow or unfollow       the follower's feed and visibility, both profiles
+ *   privacy or admin change  everything
+ *
+ * A post's row is created with the post and removed when it is deleted. Without a row the
+ * post has no tag and is looked up, so a tag for a post that does not exist gets 404, not 304;
+ * posts made before version stamps existed get their row on their next like or comment.
+ *
+ * Every tag also carries the current maxStaleness window, counted from the epoch so every
+ * node agrees on it. Feed pages need it because likes and comments on their posts don't bump
+ * the feed; for all tags it bounds how long a bump that failed after the commit, which is only
+ * logged, can keep a stale copy current.
+ */
+@Slf4j
+@Component
+public class VersionStamps {
+
+    private static final int HOME_SHARD = 0;
+    private static final long NONE = 0;
+    private static final Comparator<VersionStamp.Key> KEY_ORDER =
+            Comparator.comparing(VersionStamp.Key::getKind).thenComparing(VersionStamp.Key::getKeyId);
+
+    private final VersionStampRepository versionStampRepository;
+    private final FollowRepository followRepository;
+    private final ShardRouter shardRouter;
+    // Bumps run after the mutation has committed, when its transaction can no longer be joined
+    private final TransactionTemplate newTransaction;
+
+    @Value("${socio.etag.max-staleness-seconds:60}")
+    private long maxStalenessSeconds;
+
+    @Value("${socio.etag.fanout-limit:10000}")
+    private int fanoutLimit;
+
+    public VersionStamps(VersionStampRepository versionStampRepository, FollowRepository followRepository,
+                         ShardRouter shardRouter, PlatformTransactionManager transactionManager) {
+        this.versionStampRepository = versionStampRepository;
+        this.followRepository = followRepository;
+        this.shardRouter = shardRouter;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * A feed page as the given user sees it
+     */
+    public String feedTag(Long userId, Pageable pageable) {
+        Map<VersionStamp.Key, Long> versions = read(
+                key(VersionStamp.GLOBAL, NONE), key(VersionStamp.FEED, userId), key(VersionStamp.POPULAR, NONE));
+        return tag("f", userId, versions.get(key(VersionStamp.GLOBAL, NONE)),
+                versions.get(key(VersionStamp.FEED, userId)), versions.get(key(VersionStamp.POPULAR, NONE)),
+                pageable.getPageNumber() + "." + pageable.getPageSize() + "." + Integer.toHexString(pageable.getSort().toString().hashCode()));
+    }
+
+    /**
+     * A post as the given user sees it; whether it is visible depends on whom they follow
+     *
+     * @return the tag, or null if the post has none and must be looked up
+     */
+    public String postTag(Long postId, Long viewerId) {
+        Map<VersionStamp.Key, Long> versions = read(
+                key(VersionStamp.GLOBAL, NONE), key(VersionStamp.POST, postId), key(VersionStamp.FOLLOWS, viewerId));
+        long version = versions.get(key(VersionStamp.POST, postId));
+        if (version == 0) {
+            return null;
+        }
+        return tag("p", postId, versions.get(key(VersionStamp.GLOBAL, NONE)), version,
+                versions.get(key(VersionStamp.FOLLOWS, viewerId)), Long.toString(viewerId));
+    }
+
+    public String profileTag(Long userId) {
+        Map<VersionStamp.Key, Long> versions = read(key(VersionStamp.GLOBAL, NONE), key(VersionStamp.PROFILE, userId));
+        return tag("u", userId, versions.get(key(VersionStamp.GLOBAL, NONE)),
+                versions.get(key(VersionStamp.PROFILE, userId)), 0, "");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivity(ActivityEvent event) {
+        switch (event.getType()) {
+            case POST_CREATED:
+                bumpPost(event.getPostId());
+                bumpFeeds(event.getActorId());
+                break;
+            case POST_DELETED:
+                removePost(event.getPostId());
+                bumpFeeds(event.getRecipientId());
+                break;
+            case LIKE:
+            case COMMENT:
+                bumpPost(event.getPostId());
+                break;
+            case FOLLOW:
+                bumpFollow(event.getActorId(), event.getRecipientId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * For changes to a post that publish no event, such as unlikes and comment deletions
+     */
+    public void postChanged(Long postId) {
+        afterCommit(() -> bumpPost(postId));
+    }
+
+    public void followChanged(Long followerId, Long followeeId) {
+        afterCommit(() -> bumpFollow(followerId, followeeId));
+    }
+
+    public void profileChanged(Long userId) {
+        afterCommit(() -> bump(HOME_SHARD, key(VersionStamp.PROFILE, userId)));
+    }
+
+    /**
+     * For changes that can alter any response, e.g. a profile turning private
+     */
+    public void invalidateAll() {
+        afterCommit(() -> bump(HOME_SHARD, key(VersionStamp.GLOBAL, NONE)));
+    }
+
+    private void bumpPost(Long postId) {
+        bump(HOME_SHARD, key(VersionStamp.POST, postId));
+    }
+
+    private void removePost(Long postId) {
+        if (postId != null) {
+            inTransaction(HOME_SHARD, () -> versionStampRepository.remove(VersionStamp.POST, postId));
+        }
+    }
+
+    private void bumpFollow(Long followerId, Long followeeId) {
+        bump(HOME_SHARD, key(VersionStamp.FOLLOWS, followerId), key(VersionStamp.FEED, followerId),
+                key(VersionStamp.PROFILE, followerId), key(VersionStamp.PROFILE, followeeId));
+    }
+
+    private void bumpFeeds(Long authorId) {
+        if (authorId == null) {
+            return;
+        }
+        // Follows live on the home shard, so the whole fan-out is one transaction there
+        inTransaction(HOME_SHARD, () -> {
+            versionStampRepository.bump(VersionStamp.FEED, authorId);
+            if (followRepository.countByFolloweeId(authorId) > fanoutLimit) {
+                versionStampRepository.bump(VersionStamp.POPULAR, NONE);
+            } else {
+                versionStampRepository.bumpFollowerFeeds(authorId);
+            }
+        });
+    }
+
+    private void bump(int shard, VersionStamp.Key... keys) {
+        // Same order in every transaction, so two bumps sharing keys cannot deadlock
+        List<VersionStamp.Key> ordered = Arrays.stream(keys)
+                .filter(key -> key.getKeyId() != null)
+                .sorted(KEY_ORDER)
+                .distinct()
+                .collect(Collectors.toList());
+        if (!ordered.isEmpty()) {
+            inTransaction(shard, () -> ordered.forEach(key -> versionStampRepository.bump(key.getKind(), key.getKeyId())));
+        }
+    }
+
+    private void inTransaction(int shard, Runnable work) {
+        try {
+            shardRouter.onShard(shard, () -> newTransaction.execute(status -> {
+                work.run();
+                return null;
+            }));
+        } catch (RuntimeException e) {
+            log.error("Could not bump ETag versions on shard {}", shard, e);
+        }
+    }
+
+    /**
+     * Read versions from the home shard, where requests go when no shard is chosen; a
+     * missing row reads as 0
+     */
+    private Map<VersionStamp.Key, Long> read(VersionStamp.Key... keys) {
+        Map<VersionStamp.Key, Long> versions = new HashMap<>();
+        for (VersionStamp.Key key : keys) {
+            versions.put(key, 0L);
+        }
+        versionStampRepository.findAllById(Arrays.asList(keys))
+                .forEach(stamp -> versions.put(key(stamp.getKind(), stamp.getKeyId()), stamp.getVersion()));
+        return versions;
+    }
+
+    private static VersionStamp.Key key(String kind, Long id) {
+        return new VersionStamp.Key(kind, id);
+    }
+
+    private String tag(String kind, Long id, long global, long version, long extra, String suffix) {
+        String window = Long.toString(System.currentTimeMillis() / (maxStalenessSeconds * 1000), 36);
+        return "W/\"" + kind + id + "-" + global + "." + version + "." + extra
+                + (suffix.isEmpty() ? "" : "-" + suffix) + "-" + window + "\"";
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,110 @@
+// VirtualThreadConfig.java
+package com.socio.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Serve requests and async work on virtual threads (JDK 21+).
+ *
+ * Enabled with socio.threads.virtual=true. Tomcat then starts one virtual thread
+ * per request instead of borrowing from its fixed worker pool, so concurrency is
+ * bounded by the Hikari pool rather than by server.tomcat.threads.max.
+ */
+@Configuration
+@ConditionalOnProperty(name = "socio.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(name = {
+            TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME
+    })
+    public AsyncTaskExecutor applicationTaskExecutor(ObjectProvider<TaskDecorator> taskDecorator) {
+        TaskExecutorAdapter executor = new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+        // Spring Boot's own executor applies the decorator; this one replaces it, so do the same
+        taskDecorator.ifUnique(executor::setTaskDecorator);
+        return executor;
+    }
+
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor() {
+        return new VirtualThreadPinningMonitor();
+    }
+}
+
+// VirtualThreadPinningMonitor.java
+package com.socio.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Logs where virtual threads get pinned to their carrier.
+ *
+ * A virtual thread that blocks inside a synchronized block or a native frame
+ * holds its carrier thread for the whole wait, which quietly brings back the
+ * platform-thread limit. The JDK reports these as jdk.VirtualThreadPinned
+ * events; we stream them and log the top frames so the hot spot can be fixed.
+ */
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    private static final int FRAMES_TO_LOG = 8;
+
+    @Value("${socio.threads.pinning-threshold-ms:20}")
+    private long thresholdMs;
+
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned")
+                .withThreshold(Duration.ofMillis(thresholdMs))
+                .withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::logPinned);
+        stream.startAsync();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stream.close();
+    }
+
+    private void logPinned(RecordedEvent event) {
+        String frames = "<no stack trace>";
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> top = event.getStackTrace().getFrames();
+            frames = top.stream()
+                    .limit(FRAMES_TO_LOG)
+                    .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                            + ":" + frame.getLineNumber())
+                    .collect(Collectors.joining("\n    at "));
+        }
+        log.warn("Virtual thread pinned for {} ms\n    at {}", event.getDuration().toMillis(), frames);
+    }
+}
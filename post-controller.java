@@ -1,7 +1,10 @@
 package com.socio.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socio.cache.VersionStamps;
 import com.socio.dto.PostDto;
 import com.socio.dto.PostRequest;
+import com.socio.metrics.SqlBudget;
 import com.socio.security.CurrentUser;
 import com.socio.security.UserPrincipal;
 import com.socio.service.PostService;
@@ -10,12 +13,17 @@ import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -27,7 +35,14 @@ import java.util.List;
 @Api(tags = "Post Management")
 public class PostController {
 
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final byte[] NEWLINE = {'\n'};
+    // Personalised, so browsers may keep it but must revalidate and shared caches must not
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private final PostService postService;
+    private final ObjectMapper objectMapper;
+    private final VersionStamps versionStamps;
 
     /**
      * Create a new post
@@ -44,16 +59,23 @@ public class PostController {
     }
 
     /**
-     * Get a post by ID
+     * Get a post by ID; answers 304 if the client's ETag is current
      */
     @GetMapping("/{postId}")
     @ApiOperation("Get a post by ID")
+    @SqlBudget(10)
     public ResponseEntity<PostDto> getPostById(
             @PathVariable Long postId,
-            @CurrentUser UserPrincipal currentUser) {
+            @CurrentUser UserPrincipal currentUser,
+            WebRequest webRequest) {
         
+        // No tag means the post may not exist, so it is looked up for the 404
+        String tag = versionStamps.postTag(postId, currentUser.getId());
+        if (tag != null && webRequest.checkNotModified(tag)) {
+            return null;
+        }
         PostDto post = postService.getPostById(postId, currentUser.getId());
-        return ResponseEntity.ok(post);
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(post);
     }
 
     /**
@@ -74,6 +96,7 @@ public class PostController {
      */
     @GetMapping("/user/{userId}")
     @ApiOperation("Get posts by user ID")
+    @SqlBudget(10)
     public ResponseEntity<List<PostDto>> getPostsByUserId(
             @PathVariable Long userId,
             @CurrentUser UserPrincipal currentUser) {
@@ -83,16 +106,48 @@ public class PostController {
     }
 
     /**
-     * Get feed for current user
+     * Stream posts by user ID as newline-delimited JSON
+     */
+    @GetMapping(value = "/user/{userId}", produces = APPLICATION_NDJSON)
+    @ApiOperation("Stream posts by user ID")
+    public ResponseEntity<StreamingResponseBody> streamPostsByUserId(
+            @PathVariable Long userId,
+            @CurrentUser UserPrincipal currentUser) {
+        
+        return ndjson(postService.streamPostsByUserId(userId, currentUser.getId()));
+    }
+
+    /**
+     * Search posts by content
+     */
+    @GetMapping("/search")
+    @ApiOperation("Search posts by content")
+    @SqlBudget(10)
+    public ResponseEntity<Page<PostDto>> searchPosts(
+            @RequestParam("q") String query,
+            @CurrentUser UserPrincipal currentUser,
+            Pageable pageable) {
+        
+        Page<PostDto> posts = postService.searchPosts(query, currentUser.getId(), pageable);
+        return ResponseEntity.ok(posts);
+    }
+
+    /**
+     * Get feed for current user; answers 304 if the client's ETag is current
      */
     @GetMapping("/feed")
     @ApiOperation("Get feed for current user")
+    @SqlBudget(10)
     public ResponseEntity<Page<PostDto>> getFeed(
             @CurrentUser UserPrincipal currentUser,
-            Pageable pageable) {
+            Pageable pageable,
+            WebRequest webRequest) {
         
+        if (webRequest.checkNotModified(versionStamps.feedTag(currentUser.getId(), pageable))) {
+            return null;
+        }
         Page<PostDto> feed = postService.getFeedForUser(currentUser.getId(), pageable);
-        return ResponseEntity.ok(feed);
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(feed);
     }
 
     /**
@@ -114,6 +169,7 @@ public class PostController {
      */
     @GetMapping("/group/{groupId}")
     @ApiOperation("Get posts by group ID")
+    @SqlBudget(10)
     public ResponseEntity<List<PostDto>> getPostsByGroupId(
             @PathVariable Long groupId,
             @CurrentUser UserPrincipal currentUser) {
@@ -122,6 +178,18 @@ public class PostController {
         return ResponseEntity.ok(posts);
     }
 
+    /**
+     * Stream posts by group ID as newline-delimited JSON
+     */
+    @GetMapping(value = "/group/{groupId}", produces = APPLICATION_NDJSON)
+    @ApiOperation("Stream posts by group ID")
+    public ResponseEntity<StreamingResponseBody> streamPostsByGroupId(
+            @PathVariable Long groupId,
+            @CurrentUser UserPrincipal currentUser) {
+        
+        return ndjson(postService.streamPostsByGroupId(groupId, currentUser.getId()));
+    }
+
     /**
      * Create a post in a group
      */
@@ -161,4 +229,22 @@ public class PostController {
         Page<PostDto> posts = postService.getPostsByFileType(fileType, pageable);
         return ResponseEntity.ok(posts);
     }
+
+    /**
+     * Write each post as one JSON line, flushing after every chunk so the client can start rendering
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(Iterator<List<PostDto>> chunks) {
+        StreamingResponseBody body = out -> {
+            while (chunks.hasNext()) {
+                for (PostDto post : chunks.next()) {
+                    out.write(objectMapper.writeValueAsBytes(post));
+                    out.write(NEWLINE);
+                }
+                out.flush();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .body(body);
+    }
 }
@@ -1,42 +1,91 @@
 package com.socio.service.impl;
 
+import com.socio.cache.AdminDirectory;
+import com.socio.cache.UserSummary;
+import com.socio.cache.UserSummaryCache;
 import com.socio.dto.PostDto;
 import com.socio.dto.PostRequest;
 import com.socio.entity.*;
+import com.socio.event.ActivityEvent;
 import com.socio.exception.ForbiddenException;
 import com.socio.exception.ResourceNotFoundException;
+import com.socio.jfr.FeedAssemblyEvent;
+import com.socio.jfr.PostHydrationEvent;
+import com.socio.jfr.VisibilityCheckEvent;
+import com.socio.media.ImageDerivativePipeline;
+import com.socio.media.MediaStore;
+import com.socio.metrics.MeteredService;
+import com.socio.metrics.SqlBudget;
+import com.socio.search.PostSearchIndex;
 import com.socio.repository.*;
+import com.socio.sharding.ShardRouter;
 import com.socio.service.FileService;
 import com.socio.service.PostService;
+import com.socio.util.FileTypes;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Implementation of the PostService interface
  */
 @Service
+@MeteredService
 @RequiredArgsConstructor
 public class PostServiceImpl implements PostService {
 
+    // Order of merged cross-shard listings; ids break ties and are time-ordered themselves
+    private static final Comparator<Post> NEWEST_FIRST = Comparator.comparing(Post::getCreatedAt)
+            .thenComparing(Post::getId)
+            .reversed();
+    private static final Comparator<Post> HIGHEST_ID_FIRST = Comparator.comparing(Post::getId).reversed();
+
     private final PostRepository postRepository;
-    private final UserRepository userRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final AdminDirectory adminDirectory;
     private final LikeRepository likeRepository;
     private final CommentRepository commentRepository;
     private final FollowRepository followRepository;
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final FileService fileService;
+    private final MediaStore mediaStore;
+    private final ImageDerivativePipeline imageDerivativePipeline;
+    private final PostSearchIndex postSearchIndex;
+    private final ShardRouter shardRouter;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${socio.posts.stream-chunk-size:200}")
+    private int streamChunkSize;
 
     /**
      * Create a new post
@@ -44,7 +93,7 @@ public class PostServiceImpl implements PostService {
     @Override
     @Transactional
     public PostDto createPost(Long userId, PostRequest request, MultipartFile file) {
-        User user = userRepository.findById(userId)
+        UserSummary user = userSummaryCache.get(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
         Post post = new Post();
@@ -54,14 +103,20 @@ public class PostServiceImpl implements PostService {
 
         // Handle file upload if present
         if (file != null && !file.isEmpty()) {
-            String fileUrl = fileService.uploadFile(file);
-            post.setFileUrl(fileUrl);
-            post.setFileType(getFileType(file.getContentType()));
+            String blobHash = mediaStore.store(file);
+            post.setBlobHash(blobHash);
+            post.setFileUrl(mediaStore.urlFor(blobHash));
+            post.setFileType(FileTypes.fromContentType(file.getContentType()));
+
+            // Render thumbnails once the post is committed
+            if ("IMAGE".equals(post.getFileType())) {
+                afterCommit(() -> imageDerivativePipeline.submit(blobHash));
+            }
         }
 
         // Handle shared post
         if (request.getOriginalPostId() != null) {
-            Post originalPost = postRepository.findById(request.getOriginalPostId())
+            Post originalPost = findPost(request.getOriginalPostId())
                     .orElseThrow(() -> new ResourceNotFoundException("Original post not found"));
             
             post.setIsShared(true);
@@ -69,7 +124,9 @@ public class PostServiceImpl implements PostService {
             post.setOriginalUserId(originalPost.getUserId());
         }
 
-        Post savedPost = postRepository.save(post);
+        Post savedPost = shardRouter.onUserShard(userId, () -> postRepository.save(post));
+        afterCommit(() -> postSearchIndex.index(savedPost, user.isPrivate()));
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.POST_CREATED, userId, null, savedPost.getId()));
         return convertToDto(savedPost, userId);
     }
 
@@ -77,26 +134,33 @@ public class PostServiceImpl implements PostService {
      * Get a post by its ID
      */
     @Override
+    @Transactional(readOnly = true)
     @Cacheable(value = "posts", key = "#postId")
+    @SqlBudget(8)
     public PostDto getPostById(Long postId, Long currentUserId) {
-        Post post = postRepository.findById(postId)
+        Post post = findPost(postId)
                 .orElseThrow(() -> new ResourceNotFoundException("Post not found"));
         
-        User postOwner = userRepository.findById(post.getUserId())
-                .orElseThrow(() -> new ResourceNotFoundException("Post owner not found"));
-                
-        // Check if current user can view this post
-        if (postOwner.isPrivate() && !postOwner.getId().equals(currentUserId)) {
-            // Check if current user follows the post owner
-            boolean isFollowing = followRepository.findByFollowerIdAndFolloweeId(currentUserId, post.getUserId()).isPresent();
-            
-            // If not following and not an admin, forbid access
-            User currentUser = userRepository.findById(currentUserId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Current user not found"));
+        VisibilityCheckEvent check = visibilityCheck("POST", postId, currentUserId);
+        try {
+            UserSummary postOwner = userSummaryCache.get(post.getUserId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Post owner not found"));
             
-            if (!isFollowing && !currentUser.isAdmin()) {
-                throw new ForbiddenException("Cannot view post from private profile");
+            // Check if current user can view this post
+            check.privateTarget = postOwner.isPrivate();
+            if (postOwner.isPrivate() && !postOwner.getId().equals(currentUserId)) {
+                // Check if current user follows the post owner
+                check.relationshipLookup = true;
+                boolean isFollowing = followRepository.findByFollowerIdAndFolloweeId(currentUserId, post.getUserId()).isPresent();
+                
+                // If not following and not an admin, forbid access
+                if (!isFollowing && !adminDirectory.isAdmin(currentUserId)) {
+                    throw new ForbiddenException("Cannot view post from private profile");
+                }
             }
+            check.allowed = true;
+        } finally {
+            check.commit();
         }
         
         return convertToDto(post, currentUserId);
@@ -109,65 +173,81 @@ public class PostServiceImpl implements PostService {
     @Transactional
     @CacheEvict(value = "posts", key = "#postId")
     public boolean deletePost(Long postId, Long userId) {
-        Post post = postRepository.findById(postId)
+        Post post = findPost(postId)
                 .orElseThrow(() -> new ResourceNotFoundException("Post not found"));
         
-        User user = userRepository.findById(userId)
+        // Verify user exists
+        userSummaryCache.get(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
         
         // Only post owner or admin can delete a post
-        if (!post.getUserId().equals(userId) && !user.isAdmin()) {
+        if (!post.getUserId().equals(userId) && !adminDirectory.isAdmin(userId)) {
             throw new ForbiddenException("Not authorized to delete this post");
         }
         
-        // Delete file if exists
-        if (post.getFileUrl() != null) {
+        // Release the media blob, or delete legacy files stored before deduplication
+        if (post.getBlobHash() != null) {
+            mediaStore.release(post.getBlobHash());
+        } else if (post.getFileUrl() != null) {
             fileService.deleteFile(post.getFileUrl());
         }
         
-        postRepository.delete(post);
+        shardRouter.onPostShard(postId, () -> {
+            postRepository.delete(post);
+            return null;
+        });
+        afterCommit(() -> postSearchIndex.delete(postId));
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.POST_DELETED, userId, post.getUserId(), postId));
         return true;
     }
 
     /**
-     * Get all posts created by a specific user
+     * Get all posts created by a specific user, archived ones included, newest first
      */
     @Override
+    @Transactional(readOnly = true)
     @Cacheable(value = "userPosts", key = "#userId")
+    @SqlBudget(8)
     public List<PostDto> getPostsByUserId(Long userId, Long currentUserId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-        
-        // Check if current user can view posts from this user
-        if (user.isPrivate() && !userId.equals(currentUserId)) {
-            // Check if current user follows the requested user
-            boolean isFollowing = followRepository.findByFollowerIdAndFolloweeId(currentUserId, userId).isPresent();
-            
-            // If not following and not an admin, forbid access
-            User currentUser = userRepository.findById(currentUserId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Current user not found"));
-            
-            if (!isFollowing && !currentUser.isAdmin()) {
-                throw new ForbiddenException("Cannot view posts from private profile");
-            }
-        }
-        
-        List<Post> posts = postRepository.findByUserId(userId);
-        return posts.stream()
-                .map(post -> convertToDto(post, currentUserId))
-                .collect(Collectors.toList());
+        checkCanViewUserPosts(userId, currentUserId);
+        return convertToDtos(shardRouter.onUserShard(userId, () -> postRepository.findAllByUserIdWithArchive(userId)), currentUserId);
+    }
+
+    /**
+     * Stream a user's posts in keyset chunks, newest first, continuing into the archive
+     */
+    @Override
+    public Iterator<List<PostDto>> streamPostsByUserId(Long userId, Long currentUserId) {
+        checkCanViewUserPosts(userId, currentUserId);
+        return new PostChunkIterator(
+                (beforeId, chunk) -> shardRouter.onUserShard(userId,
+                        () -> postRepository.findChunkByUserIdWithArchive(userId, beforeId, chunk)), currentUserId);
     }
 
     /**
      * Get the feed for a user (posts from followed users and own posts)
      */
     @Override
+    @Transactional(readOnly = true)
     @Cacheable(value = "userFeed", key = "#userId + '-' + #pageable.pageNumber + '-' + #pageable.pageSize")
+    @SqlBudget(8)
     public Page<PostDto> getFeedForUser(Long userId, Pageable pageable) {
+        FeedAssemblyEvent event = new FeedAssemblyEvent();
+        event.begin();
+        
         // Get posts from user and followed users
-        Page<Post> posts = postRepository.findFeedForUser(userId, pageable);
+        Page<Post> posts = shardRouter.isSharded()
+                ? findFeedAcrossShards(userId, pageable)
+                : postRepository.findFeedForUser(userId, pageable);
+        Page<PostDto> feed = new PageImpl<>(convertToDtos(posts.getContent(), userId), pageable, posts.getTotalElements());
         
-        return posts.map(post -> convertToDto(post, userId));
+        event.userId = userId;
+        event.page = pageable.getPageNumber();
+        event.pageSize = pageable.getPageSize();
+        event.postCount = posts.getNumberOfElements();
+        event.totalPosts = posts.getTotalElements();
+        event.commit();
+        return feed;
     }
 
     /**
@@ -177,15 +257,15 @@ public class PostServiceImpl implements PostService {
     @Transactional
     public PostDto sharePost(Long userId, Long originalPostId, String content) {
         // Verify original post exists
-        Post originalPost = postRepository.findById(originalPostId)
+        Post originalPost = findPost(originalPostId)
                 .orElseThrow(() -> new ResourceNotFoundException("Original post not found"));
         
         // Verify current user exists
-        userRepository.findById(userId)
+        UserSummary sharer = userSummaryCache.get(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
         
         // Check if original post owner is private
-        User originalPostOwner = userRepository.findById(originalPost.getUserId())
+        UserSummary originalPostOwner = userSummaryCache.get(originalPost.getUserId())
                 .orElseThrow(() -> new ResourceNotFoundException("Original post owner not found"));
         
         if (originalPostOwner.isPrivate()) {
@@ -193,10 +273,7 @@ public class PostServiceImpl implements PostService {
             boolean isFollowing = followRepository.findByFollowerIdAndFolloweeId(userId, originalPost.getUserId()).isPresent();
             
             // If not following and not an admin, forbid sharing
-            User currentUser = userRepository.findById(userId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Current user not found"));
-            
-            if (!isFollowing && !currentUser.isAdmin() && !userId.equals(originalPost.getUserId())) {
+            if (!isFollowing && !adminDirectory.isAdmin(userId) && !userId.equals(originalPost.getUserId())) {
                 throw new ForbiddenException("Cannot share post from private profile");
             }
         }
@@ -210,7 +287,9 @@ public class PostServiceImpl implements PostService {
         sharedPost.setOriginalPostId(originalPostId);
         sharedPost.setOriginalUserId(originalPost.getUserId());
         
-        Post savedPost = postRepository.save(sharedPost);
+        Post savedPost = shardRouter.onUserShard(userId, () -> postRepository.save(sharedPost));
+        afterCommit(() -> postSearchIndex.index(savedPost, sharer.isPrivate()));
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.POST_CREATED, userId, null, savedPost.getId()));
         return convertToDto(savedPost, userId);
     }
 
@@ -218,28 +297,34 @@ public class PostServiceImpl implements PostService {
      * Get all posts for a specific group
      */
     @Override
+    @Transactional(readOnly = true)
     @Cacheable(value = "groupPosts", key = "#groupId")
+    @SqlBudget(8)
     public List<PostDto> getPostsByGroupId(Long groupId, Long currentUserId) {
-        // Verify group exists
-        Group group = groupRepository.findById(groupId)
-                .orElseThrow(() -> new ResourceNotFoundException("Group not found"));
-        
-        // Check if current user is member of the group or an admin
-        User currentUser = userRepository.findById(currentUserId)
-                .orElseThrow(() -> new ResourceNotFoundException("Current user not found"));
-        
-        if (group.isPrivate() && !group.getCreatorId().equals(currentUserId)) {
-            boolean isMember = groupMemberRepository.findByGroupIdAndUserId(groupId, currentUserId).isPresent();
-            
-            if (!isMember && !currentUser.isAdmin()) {
-                throw new ForbiddenException("Cannot view posts from private group");
-            }
+        checkCanViewGroupPosts(groupId, currentUserId);
+        if (!shardRouter.isSharded()) {
+            return convertToDtos(postRepository.findByGroupId(groupId), currentUserId);
         }
-        
-        List<Post> posts = postRepository.findByGroupId(groupId);
-        return posts.stream()
-                .map(post -> convertToDto(post, currentUserId))
-                .collect(Collectors.toList());
+        Map<Integer, List<Post>> perShard = shardRouter.scatter(shardRouter.partitionByUser(groupMemberIds(groupId)),
+                (shard, memberIds) -> postRepository.findNewestByUserIds(memberIds, Pageable.unpaged()).getContent());
+        return convertToDtos(ShardRouter.mergeSorted(perShard.values(), NEWEST_FIRST, 0, Integer.MAX_VALUE), currentUserId);
+    }
+
+    /**
+     * Stream a group's posts in keyset chunks, newest first
+     */
+    @Override
+    public Iterator<List<PostDto>> streamPostsByGroupId(Long groupId, Long currentUserId) {
+        checkCanViewGroupPosts(groupId, currentUserId);
+        if (!shardRouter.isSharded()) {
+            return new PostChunkIterator(
+                    (beforeId, chunk) -> postRepository.findChunkByGroupId(groupId, beforeId, chunk), currentUserId);
+        }
+        Map<Integer, List<Long>> membersByShard = shardRouter.partitionByUser(groupMemberIds(groupId));
+        return new PostChunkIterator((beforeId, chunk) -> ShardRouter.mergeSorted(
+                shardRouter.scatter(membersByShard,
+                        (shard, memberIds) -> postRepository.findChunkByUserIds(memberIds, beforeId, chunk)).values(),
+                HIGHEST_ID_FIRST, 0, chunk.getPageSize()), currentUserId);
     }
 
     /**
@@ -271,7 +356,7 @@ public class PostServiceImpl implements PostService {
     @Transactional
     public Post createBirthdayPost(Long userId) {
         // Verify user exists
-        User user = userRepository.findById(userId)
+        UserSummary user = userSummaryCache.get(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
         
         // Create birthday post
@@ -280,7 +365,9 @@ public class PostServiceImpl implements PostService {
         birthdayPost.setUserId(userId); // Post appears on user's own wall
         birthdayPost.setCreatedAt(LocalDateTime.now());
         
-        return postRepository.save(birthdayPost);
+        Post savedPost = shardRouter.onUserShard(userId, () -> postRepository.save(birthdayPost));
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.POST_CREATED, userId, null, savedPost.getId()));
+        return savedPost;
     }
 
     /**
@@ -291,7 +378,7 @@ public class PostServiceImpl implements PostService {
     public Page<PostDto> getPostsByEngagement(Pageable pageable) {
         // This would typically involve a custom query with join and order by
         // For simplicity, we're fetching all posts and then sorting
-        Page<Post> posts = postRepository.findAll(pageable);
+        Page<Post> posts = findAllPosts(pageable);
         
         return posts.map(post -> {
             PostDto dto = convertToDto(post, null);
@@ -308,71 +395,303 @@ public class PostServiceImpl implements PostService {
     public Page<PostDto> getPostsByFileType(String fileType, Pageable pageable) {
         // This would typically be a custom query
         // For simplicity, we're filtering after fetching
-        Page<Post> allPosts = postRepository.findAll(pageable);
+        Page<Post> allPosts = findAllPosts(pageable);
         
         return allPosts
                 .filter(post -> fileType.equals(post.getFileType()))
                 .map(post -> convertToDto(post, null));
     }
 
+    /**
+     * Full-text search over post content, limited to posts the current user may see
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<PostDto> searchPosts(String query, Long currentUserId, Pageable pageable) {
+        // Admins see everything, everyone else sees public posts plus their own and their followees'
+        Set<Long> visibleAuthors = null;
+        if (!adminDirectory.isAdmin(currentUserId)) {
+            visibleAuthors = followRepository.findByFollowerId(currentUserId).stream()
+                    .map(Follow::getFolloweeId)
+                    .collect(Collectors.toCollection(HashSet::new));
+            visibleAuthors.add(currentUserId);
+        }
+
+        PostSearchIndex.SearchHits hits = postSearchIndex.search(query, visibleAuthors,
+                (int) pageable.getOffset(), pageable.getPageSize());
+
+        // Hydrate in one query and keep the relevance order
+        Map<Long, Post> posts = shardRouter.scatter(shardRouter.partitionByPost(hits.getPostIds()),
+                        (shard, postIds) -> postRepository.findAllById(postIds)).values().stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toMap(Post::getId, Function.identity()));
+        List<Post> ordered = hits.getPostIds().stream()
+                .map(posts::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        return new PageImpl<>(convertToDtos(ordered, currentUserId), pageable, hits.getTotalHits());
+    }
+
+    private Optional<Post> findPost(Long postId) {
+        return shardRouter.onPostShard(postId, () -> postRepository.findById(postId));
+    }
+
+    /**
+     * Scatter the feed query to the shards holding the user's and their followees' posts,
+     * then merge the newest of each
+     */
+    private Page<Post> findFeedAcrossShards(Long userId, Pageable pageable) {
+        Set<Long> authorIds = followRepository.findByFollowerId(userId).stream()
+                .map(Follow::getFolloweeId)
+                .collect(Collectors.toCollection(HashSet::new));
+        authorIds.add(userId);
+
+        // Each shard has to return everything up to the end of the requested page
+        Pageable window = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize());
+        Map<Integer, Page<Post>> perShard = shardRouter.scatter(shardRouter.partitionByUser(authorIds),
+                (shard, shardAuthorIds) -> postRepository.findNewestByUserIds(shardAuthorIds, window));
+        return mergePages(perShard.values(), pageable);
+    }
+
+    /**
+     * All posts, newest first when sharded, for the engagement and file type listings
+     */
+    private Page<Post> findAllPosts(Pageable pageable) {
+        if (!shardRouter.isSharded()) {
+            return postRepository.findAll(pageable);
+        }
+        Pageable window = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize());
+        return mergePages(shardRouter.scatterAll(shard -> postRepository.findNewest(window)).values(), pageable);
+    }
+
+    private Page<Post> mergePages(Collection<Page<Post>> pages, Pageable pageable) {
+        List<Post> merged = ShardRouter.mergeSorted(
+                pages.stream().map(Page::getContent).collect(Collectors.toList()),
+                NEWEST_FIRST, pageable.getOffset(), pageable.getPageSize());
+        long total = pages.stream().mapToLong(Page::getTotalElements).sum();
+        return new PageImpl<>(merged, pageable, total);
+    }
+
+    private List<Long> groupMemberIds(Long groupId) {
+        return groupMemberRepository.findByGroupId(groupId).stream()
+                .map(GroupMember::getUserId)
+                .collect(Collectors.toList());
+    }
+
+    private void checkCanViewUserPosts(Long userId, Long currentUserId) {
+        VisibilityCheckEvent check = visibilityCheck("USER", userId, currentUserId);
+        try {
+            UserSummary user = userSummaryCache.get(userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+            
+            // Check if current user can view posts from this user
+            check.privateTarget = user.isPrivate();
+            if (user.isPrivate() && !userId.equals(currentUserId)) {
+                // Check if current user follows the requested user
+                check.relationshipLookup = true;
+                boolean isFollowing = followRepository.findByFollowerIdAndFolloweeId(currentUserId, userId).isPresent();
+                
+                // If not following and not an admin, forbid access
+                if (!isFollowing && !adminDirectory.isAdmin(currentUserId)) {
+                    throw new ForbiddenException("Cannot view posts from private profile");
+                }
+            }
+            check.allowed = true;
+        } finally {
+            check.commit();
+        }
+    }
+
+    private void checkCanViewGroupPosts(Long groupId, Long currentUserId) {
+        VisibilityCheckEvent check = visibilityCheck("GROUP", groupId, currentUserId);
+        try {
+            // Verify group exists
+            Group group = groupRepository.findById(groupId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Group not found"));
+            
+            // Check if current user is member of the group or an admin
+            check.privateTarget = group.isPrivate();
+            if (group.isPrivate() && !group.getCreatorId().equals(currentUserId)) {
+                check.relationshipLookup = true;
+                boolean isMember = groupMemberRepository.findByGroupIdAndUserId(groupId, currentUserId).isPresent();
+                
+                if (!isMember && !adminDirectory.isAdmin(currentUserId)) {
+                    throw new ForbiddenException("Cannot view posts from private group");
+                }
+            }
+            check.allowed = true;
+        } finally {
+            check.commit();
+        }
+    }
+
+    /**
+     * Start a visibility check event; committing it is a no-op unless a JFR recording is running
+     */
+    private static VisibilityCheckEvent visibilityCheck(String targetType, Long targetId, Long viewerId) {
+        VisibilityCheckEvent check = new VisibilityCheckEvent();
+        check.begin();
+        check.targetType = targetType;
+        check.targetId = targetId;
+        check.viewerId = viewerId != null ? viewerId : 0L;
+        return check;
+    }
+
+    /**
+     * Authors and original authors of a list of posts
+     */
+    private Set<Long> authorIds(List<Post> posts) {
+        Set<Long> ids = new HashSet<>();
+        for (Post post : posts) {
+            ids.add(post.getUserId());
+            if (post.getOriginalUserId() != null) {
+                ids.add(post.getOriginalUserId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Run an action once the current transaction has committed
+     */
+    private void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     /**
      * Helper method to convert Post entity to PostDto
      */
     private PostDto convertToDto(Post post, Long currentUserId) {
-        PostDto dto = new PostDto();
-        dto.setId(post.getId());
-        dto.setContent(post.getContent());
-        dto.setFileUrl(post.getFileUrl());
-        dto.setFileType(post.getFileType());
-        dto.setUserId(post.getUserId());
-        dto.setCreatedAt(post.getCreatedAt());
-        dto.setShared(post.isShared());
-        dto.setOriginalPostId(post.getOriginalPostId());
-        dto.setOriginalUserId(post.getOriginalUserId());
+        return convertToDtos(Collections.singletonList(post), currentUserId).get(0);
+    }
+
+    /**
+     * Convert a list of posts, keeping their order. Authors, like counts, comment counts
+     * and the current user's likes are each loaded once for the whole list.
+     */
+    private List<PostDto> convertToDtos(List<Post> posts, Long currentUserId) {
+        if (posts.isEmpty()) {
+            return new ArrayList<>();
+        }
         
-        // Get user name
-        userRepository.findById(post.getUserId()).ifPresent(user -> dto.setUserName(user.getName()));
+        PostHydrationEvent event = new PostHydrationEvent();
+        event.begin();
         
-        // Get original user name if shared
-        if (post.isShared() && post.getOriginalUserId() != null) {
-            userRepository.findById(post.getOriginalUserId()).ifPresent(user -> dto.setOriginalUserName(user.getName()));
+        List<Long> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
+        Set<Long> authorIds = authorIds(posts);
+        if (event.isEnabled()) {
+            event.authorCacheHits = userSummaryCache.countCached(authorIds);
         }
+        Map<Long, UserSummary> users = userSummaryCache.getAll(authorIds);
         
-        // Get like count
-        long likeCount = likeRepository.countByPostId(post.getId());
-        dto.setLikeCount(likeCount);
-        
-        // Get comment count
-        long commentCount = commentRepository.countByPostId(post.getId());
-        dto.setCommentCount(commentCount);
+        // Likes and comments live on their post's shard
+        Map<Long, Long> likeCounts = new HashMap<>();
+        Map<Long, Long> commentCounts = new HashMap<>();
+        Set<Long> likedByCurrentUser = new HashSet<>();
+        shardRouter.scatter(shardRouter.partitionByPost(postIds), (shard, shardPostIds) -> {
+            Engagement engagement = new Engagement();
+            engagement.likeCounts = likeRepository.countByPostIds(shardPostIds);
+            engagement.commentCounts = commentRepository.countByPostIds(shardPostIds);
+            engagement.likedByCurrentUser = currentUserId != null
+                    ? likeRepository.findPostIdsLikedByUser(currentUserId, shardPostIds)
+                    : Collections.emptyList();
+            return engagement;
+        }).values().forEach(engagement -> {
+            engagement.likeCounts.forEach(count -> likeCounts.put(count.getPostId(), count.getCount()));
+            engagement.commentCounts.forEach(count -> commentCounts.put(count.getPostId(), count.getCount()));
+            likedByCurrentUser.addAll(engagement.likedByCurrentUser);
+        });
         
-        // Check if current user liked this post
-        if (currentUserId != null) {
-            boolean likedByCurrentUser = likeRepository.findByPostIdAndUserId(post.getId(), currentUserId).isPresent();
-            dto.setLikedByCurrentUser(likedByCurrentUser);
+        List<PostDto> dtos = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            PostDto dto = new PostDto();
+            dto.setId(post.getId());
+            dto.setContent(post.getContent());
+            dto.setFileUrl(post.getFileUrl());
+            dto.setFileType(post.getFileType());
+            if ("IMAGE".equals(post.getFileType()) && post.getBlobHash() != null) {
+                dto.setVariantUrls(imageDerivativePipeline.urlsFor(post.getBlobHash()));
+            }
+            dto.setUserId(post.getUserId());
+            dto.setCreatedAt(post.getCreatedAt());
+            dto.setShared(post.isShared());
+            dto.setOriginalPostId(post.getOriginalPostId());
+            dto.setOriginalUserId(post.getOriginalUserId());
+            
+            UserSummary user = users.get(post.getUserId());
+            if (user != null) {
+                dto.setUserName(user.getName());
+            }
+            if (post.isShared() && post.getOriginalUserId() != null) {
+                UserSummary originalUser = users.get(post.getOriginalUserId());
+                if (originalUser != null) {
+                    dto.setOriginalUserName(originalUser.getName());
+                }
+            }
+            
+            dto.setLikeCount(likeCounts.getOrDefault(post.getId(), 0L));
+            dto.setCommentCount(commentCounts.getOrDefault(post.getId(), 0L));
+            if (currentUserId != null) {
+                dto.setLikedByCurrentUser(likedByCurrentUser.contains(post.getId()));
+            }
+            dtos.add(dto);
         }
         
-        return dto;
+        event.postCount = posts.size();
+        event.authorCount = authorIds.size();
+        event.commit();
+        return dtos;
     }
 
     /**
-     * Helper method to determine file type from content type
+     * One shard's share of the engagement data for a list of posts
      */
-    private String getFileType(String contentType) {
-        if (contentType == null) {
-            return null;
+    private static final class Engagement {
+        private List<PostCount> likeCounts;
+        private List<PostCount> commentCounts;
+        private List<Long> likedByCurrentUser;
+    }
+
+    /**
+     * Walks a post listing newest first, one keyset chunk per call to next(), so only
+     * one chunk of entities and DTOs is in memory at a time
+     */
+    private class PostChunkIterator implements Iterator<List<PostDto>> {
+
+        private final BiFunction<Long, Pageable, List<Post>> fetch;
+        private final Long currentUserId;
+        private List<Post> pending;
+        private Long beforeId = Long.MAX_VALUE;
+
+        PostChunkIterator(BiFunction<Long, Pageable, List<Post>> fetch, Long currentUserId) {
+            this.fetch = fetch;
+            this.currentUserId = currentUserId;
         }
-        
-        if (contentType.startsWith("image/")) {
-            return "IMAGE";
-        } else if (contentType.startsWith("video/")) {
-            return "VIDEO";
-        } else if (contentType.equals("application/pdf")) {
-            return "PDF";
-        } else if (contentType.startsWith("audio/")) {
-            return "AUDIO";
-        } else {
-            return "DOCUMENT";
+
+        @Override
+        public boolean hasNext() {
+            if (pending == null && beforeId != null) {
+                pending = fetch.apply(beforeId, PageRequest.of(0, streamChunkSize));
+                // A short chunk is the last one
+                beforeId = pending.size() < streamChunkSize ? null : pending.get(pending.size() - 1).getId();
+            }
+            return pending != null && !pending.isEmpty();
+        }
+
+        @Override
+        public List<PostDto> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<Post> chunk = pending;
+            pending = null;
+            return convertToDtos(chunk, currentUserId);
         }
     }
 }
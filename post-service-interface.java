@@ -7,6 +7,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -51,6 +52,16 @@ public interface PostService {
      */
     List<PostDto> getPostsByUserId(Long userId, Long currentUserId);
     
+    /**
+     * Stream all posts created by a specific user, newest first, one chunk at a time.
+     * Access is checked before this returns; chunks are loaded lazily as the iterator advances.
+     * 
+     * @param userId the ID of the user whose posts to retrieve
+     * @param currentUserId the ID of the current user
+     * @return iterator over chunks of posts as DTOs
+     */
+    Iterator<List<PostDto>> streamPostsByUserId(Long userId, Long currentUserId);
+    
     /**
      * Get the feed for a user (posts from followed users and own posts)
      * 
@@ -79,6 +90,15 @@ public interface PostService {
      */
     List<PostDto> getPostsByGroupId(Long groupId, Long currentUserId);
     
+    /**
+     * Stream all posts for a specific group, newest first, one chunk at a time
+     * 
+     * @param groupId the ID of the group
+     * @param currentUserId the ID of the current user
+     * @return iterator over chunks of posts as DTOs
+     */
+    Iterator<List<PostDto>> streamPostsByGroupId(Long groupId, Long currentUserId);
+    
     /**
      * Create a post in a group
      * 
@@ -114,4 +134,14 @@ public interface PostService {
      * @return page of posts with the specified file type
      */
     Page<PostDto> getPostsByFileType(String fileType, Pageable pageable);
+    
+    /**
+     * Search posts by content
+     * 
+     * @param query the search text
+     * @param currentUserId the ID of the current user, used for visibility filtering
+     * @param pageable pagination information
+     * @return page of matching posts, most relevant first
+     */
+    Page<PostDto> searchPosts(String query, Long currentUserId, Pageable pageable);
 }
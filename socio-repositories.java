@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,10 +16,44 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     boolean existsByEmail(String email);
     
-    @Query("SELECT u FROM User u WHERE u.email LIKE '%@socio.com'")
+    /**
+     * Admins are users with the isAdmin flag, served by the partial index
+     * CREATE INDEX idx_users_admin ON users (id) WHERE is_admin
+     */
+    @Query("SELECT u FROM User u WHERE u.isAdmin = true")
     List<User> findAllAdmins();
     
+    @Query("SELECT u.id FROM User u WHERE u.isAdmin = true")
+    List<Long> findAdminIds();
+    
     List<User> findByDateOfBirth(LocalDate date);
+    
+    /**
+     * Users whose birthday falls on the given month and day, in any year.
+     * Backed by the expression index
+     * CREATE INDEX idx_users_birth_month_day ON users ((EXTRACT(MONTH FROM date_of_birth)), (EXTRACT(DAY FROM date_of_birth)))
+     */
+    @Query(value = "SELECT u.id AS id, u.name AS name, u.is_private AS private FROM users u " +
+            "WHERE EXTRACT(MONTH FROM u.date_of_birth) = ?1 AND EXTRACT(DAY FROM u.date_of_birth) = ?2 " +
+            "ORDER BY u.id", nativeQuery = true)
+    List<BirthdayUser> findByBirthMonthAndDay(int month, int day);
+    
+    @Query("SELECT u.id FROM User u WHERE u.id IN ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
+}
+
+package com.socio.repository;
+
+/**
+ * Projection with just what a birthday post needs
+ */
+public interface BirthdayUser {
+    Long getId();
+    
+    String getName();
+    
+    // Whether the profile is private, for the search index
+    Boolean getPrivate();
 }
 
 package com.socio.repository;
@@ -27,13 +62,21 @@ import com.socio.entity.Post;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Lookups by id and a user's own listing fall through to the cold archive via
+ * {@link ArchivingPostRepository}; every query below reads the hot table only.
+ */
 @Repository
-public interface PostRepository extends JpaRepository<Post, Long> {
+public interface PostRepository extends JpaRepository<Post, Long>, ArchivingPostRepository {
     List<Post> findByUserId(Long userId);
     
     @Query("SELECT p FROM Post p WHERE p.userId = ?1 OR p.userId IN (SELECT f.followeeId FROM Follow f WHERE f.followerId = ?1)")
@@ -41,6 +84,196 @@ public interface PostRepository extends JpaRepository<Post, Long> {
     
     @Query("SELECT p FROM Post p WHERE p.userId IN (SELECT gm.userId FROM GroupMember gm WHERE gm.groupId = ?1)")
     List<Post> findByGroupId(Long groupId);
+    
+    /**
+     * One keyset chunk of a user's posts, newest first. Pass Long.MAX_VALUE as beforeId for the first chunk.
+     */
+    @Query("SELECT p FROM Post p WHERE p.userId = ?1 AND p.id < ?2 ORDER BY p.id DESC")
+    List<Post> findChunkByUserId(Long userId, Long beforeId, Pageable pageable);
+    
+    @Query("SELECT p FROM Post p WHERE p.userId IN (SELECT gm.userId FROM GroupMember gm WHERE gm.groupId = ?1) " +
+           "AND p.id < ?2 ORDER BY p.id DESC")
+    List<Post> findChunkByGroupId(Long groupId, Long beforeId, Pageable pageable);
+    
+    // Sharded variants: follows and group members live on the home shard, so callers pass the author ids
+    
+    @Query("SELECT p FROM Post p WHERE p.userId IN ?1 ORDER BY p.createdAt DESC, p.id DESC")
+    Page<Post> findNewestByUserIds(Collection<Long> userIds, Pageable pageable);
+    
+    @Query("SELECT p FROM Post p WHERE p.userId IN ?1 AND p.id < ?2 ORDER BY p.id DESC")
+    List<Post> findChunkByUserIds(Collection<Long> userIds, Long beforeId, Pageable pageable);
+    
+    @Query("SELECT p FROM Post p ORDER BY p.createdAt DESC, p.id DESC")
+    Page<Post> findNewest(Pageable pageable);
+    
+    /**
+     * One keyset chunk of all posts, oldest id first. Pass Long.MIN_VALUE as afterId for the first chunk.
+     */
+    @Query("SELECT p FROM Post p WHERE p.id > ?1 ORDER BY p.id")
+    List<Post> findChunkAfter(Long afterId, Pageable pageable);
+    
+    // Archiving
+    
+    @Query("SELECT MIN(p.createdAt) FROM Post p")
+    LocalDateTime findOldestCreatedAt();
+    
+    /**
+     * One keyset chunk of the posts created in [from, to), oldest id first
+     */
+    @Query("SELECT p FROM Post p WHERE p.createdAt >= ?1 AND p.createdAt < ?2 AND p.id > ?3 ORDER BY p.id")
+    List<Post> findChunkCreatedBetween(LocalDateTime from, LocalDateTime to, Long afterId, Pageable pageable);
+    
+    /**
+     * The given posts that are still in the table, locked until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Post p WHERE p.id IN ?1")
+    List<Post> lockAllById(Collection<Long> ids);
+}
+
+// ArchivingPostRepository.java
+package com.socio.repository;
+
+import com.socio.entity.Post;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Id lookups, deletes and a user's own listing that cover both the posts table and the
+ * cold archive. Overrides the JpaRepository methods of the same signature.
+ */
+public interface ArchivingPostRepository {
+    Optional<Post> findById(Long id);
+    
+    List<Post> findAllById(Iterable<Long> ids);
+    
+    boolean existsById(Long id);
+    
+    void delete(Post post);
+    
+    /**
+     * All of a user's posts, newest first
+     */
+    List<Post> findAllByUserIdWithArchive(Long userId);
+    
+    /**
+     * One keyset chunk of a user's posts, newest first. Pass Long.MAX_VALUE as beforeId for the first chunk.
+     */
+    List<Post> findChunkByUserIdWithArchive(Long userId, Long beforeId, Pageable pageable);
+}
+
+// ArchivingPostRepositoryImpl.java
+package com.socio.repository;
+
+import com.socio.archive.PostArchive;
+import com.socio.entity.Post;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Archived posts come back detached: changes to them, such as like counts, are not saved.
+ */
+@RequiredArgsConstructor
+public class ArchivingPostRepositoryImpl implements ArchivingPostRepository {
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    private final PostArchive postArchive;
+    
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Post> findById(Long id) {
+        Post post = entityManager.find(Post.class, id);
+        if (post != null) {
+            return Optional.of(post);
+        }
+        return postArchive.mayContain(id) ? postArchive.find(id) : Optional.empty();
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<Post> findAllById(Iterable<Long> ids) {
+        Set<Long> wanted = new HashSet<>();
+        ids.forEach(wanted::add);
+        if (wanted.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Post> posts = new ArrayList<>(entityManager
+                .createQuery("SELECT p FROM Post p WHERE p.id IN :ids", Post.class)
+                .setParameter("ids", wanted)
+                .getResultList());
+        posts.forEach(post -> wanted.remove(post.getId()));
+        wanted.removeIf(id -> !postArchive.mayContain(id));
+        posts.addAll(postArchive.findAll(wanted));
+        return posts;
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public boolean existsById(Long id) {
+        return findById(id).isPresent();
+    }
+    
+    @Override
+    @Transactional
+    public void delete(Post post) {
+        // The lock waits out an archiver moving this row, which then finds it in the archive
+        Post hot = entityManager.find(Post.class, post.getId(), LockModeType.PESSIMISTIC_WRITE);
+        if (hot != null) {
+            entityManager.remove(hot);
+        } else {
+            postArchive.delete(post.getId());
+        }
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<Post> findAllByUserIdWithArchive(Long userId) {
+        List<Post> hot = entityManager
+                .createQuery("SELECT p FROM Post p WHERE p.userId = :userId ORDER BY p.id DESC", Post.class)
+                .setParameter("userId", userId)
+                .getResultList();
+        return withArchived(hot, postArchive.findByUserId(userId, Long.MAX_VALUE, Integer.MAX_VALUE), Integer.MAX_VALUE);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<Post> findChunkByUserIdWithArchive(Long userId, Long beforeId, Pageable pageable) {
+        List<Post> hot = entityManager
+                .createQuery("SELECT p FROM Post p WHERE p.userId = :userId AND p.id < :beforeId ORDER BY p.id DESC", Post.class)
+                .setParameter("userId", userId)
+                .setParameter("beforeId", beforeId)
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        return withArchived(hot, postArchive.findByUserId(userId, beforeId, pageable.getPageSize()), pageable.getPageSize());
+    }
+    
+    // Merge by id, newest first; a post being archived is in both, and the table's copy wins
+    private static List<Post> withArchived(List<Post> hot, List<Post> archived, int limit) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        TreeMap<Long, Post> merged = new TreeMap<>(Comparator.reverseOrder());
+        archived.forEach(post -> merged.put(post.getId(), post));
+        hot.forEach(post -> merged.put(post.getId(), post));
+        return merged.values().stream().limit(limit).collect(Collectors.toList());
+    }
 }
 
 package com.socio.repository;
@@ -50,6 +283,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -57,14 +292,24 @@ public interface LikeRepository extends JpaRepository<Like, Long> {
     Optional<Like> findByPostIdAndUserId(Long postId, Long userId);
     
     long countByPostId(Long postId);
+    
+    // LIKE is a JPQL keyword, so the entity is referenced by its class name
+    @Query("SELECT l.post.id AS postId, COUNT(l) AS count FROM com.socio.entity.Like l " +
+           "WHERE l.post.id IN ?1 GROUP BY l.post.id")
+    List<PostCount> countByPostIds(Collection<Long> postIds);
+    
+    @Query("SELECT l.post.id FROM com.socio.entity.Like l WHERE l.user.id = ?1 AND l.post.id IN ?2")
+    List<Long> findPostIdsLikedByUser(Long userId, Collection<Long> postIds);
 }
 
 package com.socio.repository;
 
 import com.socio.entity.Comment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -72,6 +317,20 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
     List<Comment> findByPostId(Long postId);
     
     long countByPostId(Long postId);
+    
+    @Query("SELECT c.post.id AS postId, COUNT(c) AS count FROM Comment c WHERE c.post.id IN ?1 GROUP BY c.post.id")
+    List<PostCount> countByPostIds(Collection<Long> postIds);
+}
+
+package com.socio.repository;
+
+/**
+ * A per-post count from a grouped query
+ */
+public interface PostCount {
+    Long getPostId();
+    
+    long getCount();
 }
 
 package com.socio.repository;
@@ -93,6 +352,20 @@ public interface FollowRepository extends JpaRepository<Follow, Long> {
     List<Follow> findByFolloweeId(Long followeeId);
     
     long countByFolloweeId(Long followeeId);
+    
+    @Query("SELECT f.followerId FROM Follow f WHERE f.followeeId = ?1")
+    List<Long> findFollowerIds(Long followeeId);
+    
+    @Query("SELECT f.followeeId AS userId, COUNT(f) AS followerCount FROM Follow f GROUP BY f.followeeId")
+    List<FollowerCount> countFollowersPerUser();
+}
+
+package com.socio.repository;
+
+public interface FollowerCount {
+    Long getUserId();
+    
+    long getFollowerCount();
 }
 
 package com.socio.repository;
@@ -135,8 +408,11 @@ package com.socio.repository;
 import com.socio.entity.Report;
 import com.socio.entity.ReportStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -144,4 +420,214 @@ public interface ReportRepository extends JpaRepository<Report, Long> {
     List<Report> findByStatus(ReportStatus status);
     
     List<Report> findByPostId(Long postId);
+    
+    /**
+     * The latest reasons of each given post, newest first within a post.
+     * A report is kept when fewer than limit newer ones exist for its post
+     */
+    @Query("SELECT r.post.id AS postId, r.reason AS reason FROM Report r " +
+           "WHERE r.post.id IN ?1 AND r.status = ?2 AND ?3 > (SELECT COUNT(n) FROM Report n " +
+           "WHERE n.post = r.post AND n.status = ?2 AND n.createdAt > r.createdAt) " +
+           "ORDER BY r.post.id, r.createdAt DESC, r.id DESC")
+    List<ReportReason> findRecentReasons(Collection<Long> postIds, ReportStatus status, long limit);
+    
+    @Query("SELECT r.id FROM Report r WHERE r.id IN ?1 AND r.status = ?2")
+    List<Long> findIdsByIdInAndStatus(Collection<Long> ids, ReportStatus status);
+    
+    @Query("SELECT r.post.id AS postId, COUNT(r) AS reportCount, MAX(r.createdAt) AS lastReportedAt " +
+           "FROM Report r WHERE r.status = ?1 GROUP BY r.post.id")
+    List<ReportAggregate> aggregatePendingByPost(ReportStatus status);
+    
+    @Modifying
+    @Query("UPDATE Report r SET r.status = ?3 WHERE r.post.id IN ?1 AND r.status = ?2")
+    int updateStatusForPosts(Collection<Long> postIds, ReportStatus from, ReportStatus to);
+    
+    @Modifying
+    @Query("DELETE FROM Report r WHERE r.post.id IN ?1")
+    int deleteByPostIds(Collection<Long> postIds);
+}
+
+package com.socio.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pending reports for one post, aggregated
+ */
+public interface ReportAggregate {
+    Long getPostId();
+    
+    long getReportCount();
+    
+    LocalDateTime getLastReportedAt();
+}
+
+package com.socio.repository;
+
+/**
+ * One pending report's reason, for the moderation queue
+ */
+public interface ReportReason {
+    Long getPostId();
+    
+    String getReason();
+}
+
+package com.socio.repository;
+
+import com.socio.entity.MediaBlob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+    /**
+     * Take a reference on a blob, creating its row on first use. One statement, so concurrent
+     * first uploads of the same content serialize on the row instead of racing to insert it.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO media_blobs (hash, size, content_type, ref_count, created_at, released_at) " +
+           "VALUES (?1, ?2, ?3, 1, ?4, NULL) " +
+           "ON CONFLICT (hash) DO UPDATE SET ref_count = media_blobs.ref_count + 1, released_at = NULL",
+           nativeQuery = true)
+    int acquire(String hash, long size, String contentType, LocalDateTime createdAt);
+    
+    @Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = b.refCount - 1, b.releasedAt = ?2 WHERE b.hash = ?1 AND b.refCount > 0")
+    int decrementRefCount(String hash, LocalDateTime releasedAt);
+    
+    @Modifying
+    @Query("DELETE FROM MediaBlob b WHERE b.hash = ?1 AND b.refCount = 0")
+    int deleteIfUnreferenced(String hash);
+    
+    @Query("SELECT b.hash FROM MediaBlob b WHERE b.refCount = 0 AND b.releasedAt < ?1")
+    List<String> findUnreferencedHashes(LocalDateTime releasedBefore, Pageable pageable);
+}
+
+package com.socio.repository;
+
+import com.socio.dto.PostPreviewDto;
+import com.socio.dto.ShareInboxItemDto;
+import com.socio.entity.Share;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Inbox queries expect an index on shares (receiver_id, created_at DESC, share_id DESC)
+ */
+@Repository
+public interface ShareRepository extends JpaRepository<Share, Long> {
+    List<Share> findByReceiverUserId(Long receiverId);
+    
+    List<Share> findByPostPostId(Long postId);
+    
+    @Query("SELECT new com.socio.dto.ShareInboxItemDto(s.shareId, s.post.postId, s.sender.userId, s.sender.name, s.createdAt, s.readAt) " +
+           "FROM Share s WHERE s.receiver.userId = ?1 " +
+           "ORDER BY s.createdAt DESC, s.shareId DESC")
+    List<ShareInboxItemDto> findInboxFirstPage(Long receiverId, Pageable pageable);
+    
+    @Query("SELECT new com.socio.dto.ShareInboxItemDto(s.shareId, s.post.postId, s.sender.userId, s.sender.name, s.createdAt, s.readAt) " +
+           "FROM Share s WHERE s.receiver.userId = ?1 " +
+           "AND (s.createdAt < ?2 OR (s.createdAt = ?2 AND s.shareId < ?3)) " +
+           "ORDER BY s.createdAt DESC, s.shareId DESC")
+    List<ShareInboxItemDto> findInboxPageBefore(Long receiverId, LocalDateTime createdAt, Long shareId, Pageable pageable);
+    
+    @Query("SELECT new com.socio.dto.PostPreviewDto(p.postId, SUBSTRING(p.content, 1, 140), p.fileType, p.fileUrl) " +
+           "FROM Post p WHERE p.postId IN ?1")
+    List<PostPreviewDto> findPostPreviews(Collection<Long> postIds);
+    
+    @Modifying
+    @Query("UPDATE Share s SET s.readAt = ?2 WHERE s.receiver.userId = ?1 AND s.readAt IS NULL")
+    int markAllRead(Long receiverId, LocalDateTime readAt);
+    
+    @Modifying
+    @Query("UPDATE Share s SET s.readAt = ?2 WHERE s.receiver.userId = ?1 AND s.readAt IS NULL AND s.shareId <= ?3")
+    int markReadUpTo(Long receiverId, LocalDateTime readAt, Long upToShareId);
+}
+
+package com.socio.repository;
+
+import com.socio.entity.ShareUnreadCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+
+@Repository
+public interface ShareUnreadCounterRepository extends JpaRepository<ShareUnreadCounter, Long> {
+    /**
+     * Add to a receiver's count, creating the row on first use. One statement, so concurrent
+     * first shares to the same receiver serialize on the row instead of racing to insert it.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO share_unread_counters (receiver_id, unread_count) VALUES (?1, ?2) " +
+           "ON CONFLICT (receiver_id) DO UPDATE SET unread_count = share_unread_counters.unread_count + EXCLUDED.unread_count",
+           nativeQuery = true)
+    int increment(Long receiverId, long delta);
+    
+    /**
+     * Add one to each receiver's count in one statement. Rows are taken in id order so that
+     * two batches with overlapping receivers cannot deadlock.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO share_unread_counters (receiver_id, unread_count) " +
+           "SELECT u.id, 1 FROM users u WHERE u.id IN (?1) ORDER BY u.id " +
+           "ON CONFLICT (receiver_id) DO UPDATE SET unread_count = share_unread_counters.unread_count + 1",
+           nativeQuery = true)
+    int incrementAll(Collection<Long> receiverIds);
+    
+    @Modifying
+    @Query("UPDATE ShareUnreadCounter c SET c.unreadCount = CASE WHEN c.unreadCount > ?2 THEN c.unreadCount - ?2 ELSE 0 END " +
+           "WHERE c.receiverId = ?1")
+    int decrement(Long receiverId, long delta);
+}
+
+package com.socio.repository;
+
+import com.socio.entity.VersionStamp;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface VersionStampRepository extends JpaRepository<VersionStamp, VersionStamp.Key> {
+    /**
+     * Add one to a version, creating the row on first use
+     */
+    @Modifying
+    @Query(value = "INSERT INTO version_stamps (kind, key_id, version) VALUES (?1, ?2, 1) " +
+           "ON CONFLICT (kind, key_id) DO UPDATE SET version = version_stamps.version + 1",
+           nativeQuery = true)
+    int bump(String kind, Long keyId);
+    
+    /**
+     * Add one to the feed version of every follower of a user in one statement, in id order
+     * so that overlapping fan-outs cannot deadlock. Runs on the home shard with the follows.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO version_stamps (kind, key_id, version) " +
+           "SELECT '" + VersionStamp.FEED + "', f.follower_id, 1 FROM follows f WHERE f.followee_id = ?1 ORDER BY f.follower_id " +
+           "ON CONFLICT (kind, key_id) DO UPDATE SET version = version_stamps.version + 1",
+           nativeQuery = true)
+    int bumpFollowerFeeds(Long followeeId);
+    
+    @Modifying
+    @Query("DELETE FROM VersionStamp s WHERE s.kind = ?1 AND s.keyId = ?2")
+    int remove(String kind, Long keyId);
 }
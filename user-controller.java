@@ -1,11 +1,13 @@
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.Valid;
@@ -19,10 +21,12 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
+    private final VersionStamps versionStamps;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, VersionStamps versionStamps) {
         this.userService = userService;
+        this.versionStamps = versionStamps;
     }
 
     /**
@@ -44,12 +48,29 @@ public class UserController {
     }
 
     /**
-     * Get user by ID
+     * Typeahead search for users by name; admins also match and see emails
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<UserSuggestionDto>> searchUsers(
+            @RequestParam("q") String prefix,
+            @RequestParam(defaultValue = "10") int limit,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        
+        boolean admin = userDetails != null && userDetails.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+        return ResponseEntity.ok(userService.searchUsers(prefix, limit, admin));
+    }
+
+    /**
+     * Get user by ID; answers 304 if the client's ETag is current
      */
     @GetMapping("/{userId}")
-    public ResponseEntity<UserDto> getUserById(@PathVariable String userId) {
+    public ResponseEntity<UserDto> getUserById(@PathVariable String userId, WebRequest webRequest) {
+        if (webRequest.checkNotModified(versionStamps.profileTag(Long.valueOf(userId)))) {
+            return null;
+        }
         UserDto user = userService.getUserById(userId);
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache().cachePrivate()).body(user);
     }
 
     /**
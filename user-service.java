@@ -110,19 +110,41 @@ public interface UserService extends UserDetailsService {
      * @return List of users being followed
      */
     List<UserDto> getUserFollowing(String userId, int page, int size);
+    
+    /**
+     * Typeahead search over user names, and email local-parts for admins
+     * 
+     * @param prefix The text typed so far
+     * @param limit Maximum number of suggestions
+     * @param includeEmail Whether to match and return emails; only for admins
+     * @return Matching users, most followed first
+     */
+    List<UserSuggestionDto> searchUsers(String prefix, int limit, boolean includeEmail);
 }
 
 // UserServiceImpl.java
+import com.socio.cache.AdminDirectory;
+import com.socio.cache.UserSummaryCache;
+import com.socio.cache.VersionStamps;
+import com.socio.event.ActivityEvent;
+import com.socio.metrics.MeteredService;
+import com.socio.metrics.SqlBudget;
+import com.socio.search.PostSearchIndex;
+import com.socio.security.PasswordHashingService;
+import com.socio.util.UserCsvParser;
+import com.socio.search.UserTypeaheadIndex;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.BufferedReader;
@@ -133,20 +155,43 @@ import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
+@MeteredService
 public class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
     private final FollowRepository followRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final PostSearchIndex postSearchIndex;
+    private final UserTypeaheadIndex userTypeaheadIndex;
+    private final UserSummaryCache userSummaryCache;
+    private final AdminDirectory adminDirectory;
+    private final VersionStamps versionStamps;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Autowired
     public UserServiceImpl(UserRepository userRepository, 
                           FollowRepository followRepository,
-                          PasswordEncoder passwordEncoder) {
+                          PasswordHashingService passwordHashingService,
+                          PostSearchIndex postSearchIndex,
+                          UserTypeaheadIndex userTypeaheadIndex,
+                          UserSummaryCache userSummaryCache,
+                          AdminDirectory adminDirectory,
+                          VersionStamps versionStamps,
+                          TransactionTemplate transactionTemplate,
+                          ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
         this.followRepository = followRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
+        this.postSearchIndex = postSearchIndex;
+        this.userTypeaheadIndex = userTypeaheadIndex;
+        this.userSummaryCache = userSummaryCache;
+        this.adminDirectory = adminDirectory;
+        this.versionStamps = versionStamps;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
     }
     
     @Override
@@ -175,13 +220,13 @@ public class UserServiceImpl implements UserService {
         // Create new user
         User user = new User();
         user.setEmail(userDto.getEmail());
-        user.setPassword(passwordEncoder.encode(userDto.getPassword()));
+        user.setPassword(passwordHashingService.encode(userDto.getPassword()));
         user.setName(userDto.getName());
         user.setDateOfBirth(userDto.getDateOfBirth());
         user.setAdmin(false); // Regular users are not admins by default
         
         User savedUser = userRepository.save(user);
-        return mapUserToDto(savedUser);
+        return indexForTypeahead(mapUserToDto(savedUser));
     }
     
     @Override
@@ -199,7 +244,9 @@ public class UserServiceImpl implements UserService {
         }
         
         User updatedUser = userRepository.save(user);
-        return mapUserToDto(updatedUser);
+        userSummaryCache.evict(Long.valueOf(userId));
+        versionStamps.profileChanged(Long.valueOf(userId));
+        return indexForTypeahead(mapUserToDto(updatedUser));
     }
     
     @Override
@@ -209,6 +256,10 @@ public class UserServiceImpl implements UserService {
         User user = getUserEntityById(userId);
         user.setPrivate(isPrivate);
         User updatedUser = userRepository.save(user);
+        userSummaryCache.evict(Long.valueOf(userId));
+        postSearchIndex.updateAuthorPrivacy(userId, isPrivate);
+        // Visibility of the user's posts changes for everyone
+        versionStamps.invalidateAll();
         return mapUserToDto(updatedUser);
     }
     
@@ -229,17 +280,23 @@ public class UserServiceImpl implements UserService {
         // Create new admin user
         User admin = new User();
         admin.setEmail(adminDto.getEmail());
-        admin.setPassword(passwordEncoder.encode(adminDto.getPassword()));
+        admin.setPassword(passwordHashingService.encode(adminDto.getPassword()));
         admin.setName(adminDto.getName());
         admin.setDateOfBirth(adminDto.getDateOfBirth());
         admin.setAdmin(true);
         
         User savedAdmin = userRepository.save(admin);
-        return mapUserToDto(savedAdmin);
+        userSummaryCache.evictByEmail(savedAdmin.getEmail());
+        adminDirectory.refresh();
+        versionStamps.invalidateAll();
+        return indexForTypeahead(mapUserToDto(savedAdmin));
     }
     
+    /**
+     * Parses and hashes outside any transaction, so no connection is held while BCrypt runs,
+     * then inserts the batch in one short transaction
+     */
     @Override
-    @Transactional
     public int bulkImportUsers(MultipartFile file, String adminId) {
         // Verify user is an admin
         User admin = getUserEntityById(adminId);
@@ -247,38 +304,43 @@ public class UserServiceImpl implements UserService {
             throw new UnauthorizedAccessException("Only admins can import users");
         }
         
-        int importCount = 0;
+        // Parse first, then hash the whole batch on the hashing pool within its bulk quota
+        List<String[]> rows;
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            String line;
-            // Skip header
-            reader.readLine();
-            
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length >= 3) { // Minimum: email, password, name
-                    try {
-                        // Create user if email doesn't exist
-                        if (!userRepository.existsByEmail(data[0])) {
-                            User user = new User();
-                            user.setEmail(data[0]);
-                            user.setPassword(passwordEncoder.encode(data[1]));
-                            user.setName(data[2]);
-                            // Set additional fields if available
-                            
-                            userRepository.save(user);
-                            importCount++;
-                        }
-                    } catch (Exception e) {
-                        // Log error but continue processing
-                        System.err.println("Error importing user: " + data[0] + " - " + e.getMessage());
-                    }
-                }
-            }
+            rows = UserCsvParser.parse(reader);
         } catch (Exception e) {
             throw new FileProcessingException("Error processing import file: " + e.getMessage());
         }
+        rows.removeIf(data -> userRepository.existsByEmail(data[0]));
+        
+        List<String> hashes = passwordHashingService.encodeAll(
+                rows.stream().map(data -> data[1]).collect(Collectors.toList()));
         
-        return importCount;
+        List<User> imported = transactionTemplate.execute(status -> {
+            List<User> saved = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                String[] data = rows.get(i);
+                try {
+                    User user = new User();
+                    user.setEmail(data[0]);
+                    user.setPassword(hashes.get(i));
+                    user.setName(data[2]);
+                    // Set additional fields if available
+                    
+                    saved.add(userRepository.save(user));
+                } catch (Exception e) {
+                    // Log error but continue processing
+                    log.warn("Error importing user {}: {}", data[0], e.getMessage());
+                }
+            }
+            return saved;
+        });
+        
+        for (User savedUser : imported) {
+            userTypeaheadIndex.put(String.valueOf(savedUser.getUserId()), savedUser.getName(),
+                    savedUser.getEmail(), 0);
+        }
+        return imported.size();
     }
     
     @Override
@@ -304,6 +366,8 @@ public class UserServiceImpl implements UserService {
         follow.setFollowing(following);
         
         followRepository.save(follow);
+        userTypeaheadIndex.adjustFollowerCount(followingId, 1);
+        eventPublisher.publishEvent(ActivityEvent.of(ActivityEvent.Type.FOLLOW, follower.getId(), following.getId(), null));
         return true;
     }
     
@@ -316,6 +380,8 @@ public class UserServiceImpl implements UserService {
         Optional<Follow> follow = followRepository.findByFollowerAndFollowing(follower, following);
         if (follow.isPresent()) {
             followRepository.delete(follow.get());
+            userTypeaheadIndex.adjustFollowerCount(followingId, -1);
+            versionStamps.followChanged(follower.getId(), following.getId());
             return true;
         }
         
@@ -323,13 +389,16 @@ public class UserServiceImpl implements UserService {
     }
     
     @Override
+    @Transactional(readOnly = true)
     @Cacheable(value = "userProfile", key = "#userId")
+    @SqlBudget(3)
     public UserDto getUserById(String userId) {
         User user = getUserEntityById(userId);
         return mapUserToDto(user);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<UserStatsDto> getUsersByFollowerCount(int page, int size) {
         return userRepository.findAllOrderedByFollowerCount(PageRequest.of(page, size))
                 .stream()
@@ -339,11 +408,13 @@ public class UserServiceImpl implements UserService {
     
     @Override
     public boolean isAdmin(String userId) {
-        User user = getUserEntityById(userId);
-        return user.isAdmin();
+        return userSummaryCache.get(Long.valueOf(userId))
+                .orElseThrow(() -> new UserNotFoundException("User not found with id: " + userId))
+                .isAdmin();
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<UserDto> getUserFollowers(String userId, int page, int size) {
         User user = getUserEntityById(userId);
         
@@ -355,6 +426,7 @@ public class UserServiceImpl implements UserService {
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<UserDto> getUserFollowing(String userId, int page, int size) {
         User user = getUserEntityById(userId);
         
@@ -365,8 +437,18 @@ public class UserServiceImpl implements UserService {
                 .collect(Collectors.toList());
     }
     
+    @Override
+    public List<UserSuggestionDto> searchUsers(String prefix, int limit, boolean includeEmail) {
+        return userTypeaheadIndex.complete(prefix, limit, includeEmail);
+    }
+    
     // Helper methods
     
+    private UserDto indexForTypeahead(UserDto dto) {
+        userTypeaheadIndex.put(String.valueOf(dto.getUserId()), dto.getName(), dto.getEmail(), dto.getFollowerCount());
+        return dto;
+    }
+    
     private User getUserEntityById(String userId) {
         return userRepository.findById(userId)
                 .orElseThrow(() -> new UserNotFoundException("User not found with id: " + userId));